@@ -0,0 +1,47 @@
+package com.reactivespring.deadline;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The point in time by which the caller needs an answer. It travels in the Reactor context of a request, so
+ * downstream calls can tell how much of the caller's time budget is left. Between services it is sent as the
+ * time left in {@link #TIMEOUT_HEADER}, which doesn't depend on the clocks of both hosts agreeing.
+ */
+public final class Deadline {
+
+    // milliseconds the caller is still willing to wait for the response
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+    private final long nanos;
+
+    private Deadline(long nanos) {
+        this.nanos = nanos;
+    }
+
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    public static Optional<Deadline> from(ContextView context) {
+        return context.getOrEmpty(Deadline.class);
+    }
+
+    public Context toContext() {
+        return Context.of(Deadline.class, this);
+    }
+
+    /**
+     * Time left until the deadline, negative once it has passed.
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(nanos - System.nanoTime());
+    }
+
+    public boolean isExpired() {
+        return nanos - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,22 @@
+package com.reactivespring.deadline;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Time budget of incoming requests, bound from {@code movies.deadline}.
+ */
+@Data
+@ConfigurationProperties(prefix = "movies.deadline")
+public class DeadlineProperties {
+
+    // budget of the requests that match no route, none when not set
+    private Duration defaultTimeout;
+    // budget of the routes matching a path pattern and query parameters, e.g. /v1/movies/{id}?streamReviews=true,
+    // the first match wins
+    private Map<String, Duration> routes = new LinkedHashMap<>();
+}
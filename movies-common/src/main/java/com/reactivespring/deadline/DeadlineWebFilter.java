@@ -0,0 +1,121 @@
+package com.reactivespring.deadline;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Gives requests a {@link Deadline}. It is the time left that the caller sent in {@link Deadline#TIMEOUT_HEADER},
+ * capped by the budget of the route, which also applies to callers that don't send one. Routes are matched on the
+ * path and, where given, on query parameters. A request with neither the header nor a budget, such as a stream,
+ * has no deadline. The deadline goes into the Reactor context for the downstream calls and queries, and once it
+ * has passed the request is cancelled and answered with a 504.
+ */
+@Component
+@EnableConfigurationProperties(DeadlineProperties.class)
+public class DeadlineWebFilter implements WebFilter {
+
+    private final Duration defaultTimeout;
+    private final Map<Route, Duration> routeTimeouts = new LinkedHashMap<>();
+
+    public DeadlineWebFilter(DeadlineProperties properties) {
+        this.defaultTimeout = properties.getDefaultTimeout();
+        properties.getRoutes().forEach((route, timeout) -> routeTimeouts.put(Route.parse(route), timeout));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var request = exchange.getRequest();
+        var timeout = routeTimeout(request);
+        var requested = requestedTimeout(request.getHeaders().getFirst(Deadline.TIMEOUT_HEADER));
+        if (requested != null && (timeout == null || requested.compareTo(timeout) < 0)) {
+            timeout = requested;
+        }
+        if (timeout == null) {
+            return chain.filter(exchange);
+        }
+        if (timeout.isNegative() || timeout.isZero()) {
+            return gatewayTimeout(exchange);
+        }
+
+        var deadline = Deadline.after(timeout);
+        return chain.filter(exchange)
+                .timeout(timeout)
+                .onErrorResume(ex -> deadline.isExpired() && !exchange.getResponse().isCommitted(),
+                        ex -> gatewayTimeout(exchange))
+                .contextWrite(deadline.toContext());
+    }
+
+    private Duration routeTimeout(ServerHttpRequest request) {
+        return routeTimeouts.entrySet().stream()
+                .filter(route -> route.getKey().matches(request))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(defaultTimeout);
+    }
+
+    private static Duration requestedTimeout(String header) {
+        if (header == null) {
+            return null;
+        }
+        try {
+            return Duration.ofMillis(Long.parseLong(header.trim()));
+        } catch (NumberFormatException e) {
+            // not a deadline we can honour, the route budget still applies
+            return null;
+        }
+    }
+
+    private static Mono<Void> gatewayTimeout(ServerWebExchange exchange) {
+        exchange.getResponse().setStatusCode(HttpStatus.GATEWAY_TIMEOUT);
+        return exchange.getResponse().setComplete();
+    }
+
+    /**
+     * A path pattern, optionally followed by query parameters that the request must have with the given values,
+     * e.g. {@code /v1/movies/{id}?streamReviews=true}.
+     */
+    private static class Route {
+
+        private final PathPattern path;
+        private final MultiValueMap<String, String> queryParams;
+
+        private Route(PathPattern path, MultiValueMap<String, String> queryParams) {
+            this.path = path;
+            this.queryParams = queryParams;
+        }
+
+        static Route parse(String route) {
+            var query = route.indexOf('?');
+            var path = query < 0 ? route : route.substring(0, query);
+            var queryParams = UriComponentsBuilder.newInstance()
+                    .query(query < 0 ? null : route.substring(query + 1))
+                    .build()
+                    .getQueryParams();
+            return new Route(PathPatternParser.defaultInstance.parse(path), queryParams);
+        }
+
+        boolean matches(ServerHttpRequest request) {
+            if (!path.matches(request.getPath().pathWithinApplication())) {
+                return false;
+            }
+            return queryParams.entrySet().stream().allMatch(param -> {
+                var values = request.getQueryParams().get(param.getKey());
+                return values != null && values.containsAll(param.getValue());
+            });
+        }
+    }
+}
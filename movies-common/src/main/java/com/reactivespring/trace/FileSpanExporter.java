@@ -0,0 +1,49 @@
+package com.reactivespring.trace;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends spans to a file as JSON lines, to look at the traces of a local run. Every span is flushed as it is
+ * written, which is fine on a developer machine, not under production load.
+ */
+@Slf4j
+public class FileSpanExporter implements SpanExporter, Closeable {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Writer writer;
+
+    public FileSpanExporter(Path file) {
+        try {
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void export(Span span) {
+        try {
+            writer.write(objectMapper.writeValueAsString(span));
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            log.warn("Span {} of trace {} not written", span.getSpanId(), span.getTraceId(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
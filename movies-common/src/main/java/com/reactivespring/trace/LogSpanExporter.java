@@ -0,0 +1,24 @@
+package com.reactivespring.trace;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Writes a line per span to the log.
+ */
+@Slf4j
+public class LogSpanExporter implements SpanExporter {
+
+    @Override
+    public void export(Span span) {
+        var attributes = new StringBuilder();
+        span.getAttributes().forEach((key, value) -> attributes.append(' ').append(key).append('=').append(value));
+
+        log.info("trace={} span={} parent={} name={} outcome={} elements={} start={} firstUs={} durationUs={}{}",
+                span.getTraceId(), span.getSpanId(), span.getParentId(), span.getName(), span.getOutcome(),
+                span.getElements(), Instant.EPOCH.plus(span.getStartEpochMicros(), ChronoUnit.MICROS),
+                span.getFirstMicros(), span.getDurationMicros(), attributes);
+    }
+}
@@ -0,0 +1,54 @@
+package com.reactivespring.trace;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Records every query of the repositories as a span of the sampled request it runs for, named after the repository
+ * and the method, e.g. {@code ReviewReactiveRepository.findReviewsByMovieInfoId}, from the subscription to the last
+ * document. Only registered while tracing is enabled, in the services that have Spring Data repositories.
+ */
+@Component
+@ConditionalOnClass(name = "org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport")
+@ConditionalOnProperty(prefix = "movies.trace", name = "enabled", havingValue = "true")
+public class RepositoryTracing implements BeanPostProcessor {
+
+    // looked up once the repositories are created, not when the post processors are
+    private final ObjectProvider<Tracer> tracer;
+
+    public RepositoryTracing(ObjectProvider<Tracer> tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof RepositoryFactoryBeanSupport) {
+            ((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory ->
+                    factory.addRepositoryProxyPostProcessor((proxyFactory, repository) -> proxyFactory.addAdvice(
+                            queryInterceptor(tracer.getObject(), repository.getRepositoryInterface().getSimpleName()))));
+        }
+        return bean;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MethodInterceptor queryInterceptor(Tracer tracer, String repository) {
+        return invocation -> {
+            var result = invocation.proceed();
+            var stage = repository + "." + invocation.getMethod().getName();
+            if (result instanceof Mono) {
+                return ((Mono<Object>) result).transform(tracer.mono(stage));
+            }
+            if (result instanceof Flux) {
+                return ((Flux<Object>) result).transform(tracer.flux(stage));
+            }
+            return result;
+        };
+    }
+}
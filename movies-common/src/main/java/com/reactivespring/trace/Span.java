@@ -0,0 +1,26 @@
+package com.reactivespring.trace;
+
+import lombok.Value;
+
+import java.util.Map;
+
+/**
+ * A finished stage of a sampled request, as handed to the {@link SpanExporter}.
+ */
+@Value
+public class Span {
+
+    String traceId;
+    String spanId;
+    // null for the first span of a trace
+    String parentId;
+    String name;
+    long startEpochMicros;
+    // to the first element, -1 without any
+    long firstMicros;
+    long durationMicros;
+    long elements;
+    // the signal the stage ended with
+    String outcome;
+    Map<String, String> attributes;
+}
@@ -0,0 +1,11 @@
+package com.reactivespring.trace;
+
+/**
+ * Where the {@link Tracer} sends finished spans. It is called on the thread that ended the span, often an event
+ * loop, so it mustn't block for long. Without a SpanExporter bean spans are logged by {@link LogSpanExporter}, or
+ * written to {@code movies.trace.file} by {@link FileSpanExporter}.
+ */
+public interface SpanExporter {
+
+    void export(Span span);
+}
@@ -0,0 +1,91 @@
+package com.reactivespring.trace;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * The span a request is in. It travels in the Reactor context of the request, and the stages of a sampled request
+ * are recorded as spans by the {@link Tracer}. Between services it is sent as a W3C {@link #TRACEPARENT_HEADER}
+ * with the sampled flag, so the downstream service records the spans of a sampled request as children of the
+ * caller's and leaves the others out, instead of sampling on its own.
+ */
+public final class Trace {
+
+    // version, trace id, id of the caller's span and flags, of which 01 means the caller sampled the request
+    public static final String TRACEPARENT_HEADER = "traceparent";
+
+    private static final Pattern TRACEPARENT = Pattern.compile("00-([0-9a-f]{32})-([0-9a-f]{16})-([0-9a-f]{2})");
+
+    private final String id;
+    // null until the first span of a sampled trace started here, spans aren't recorded for the others so they
+    // start with the id that is sent on
+    private final String spanId;
+    private final boolean sampled;
+
+    private Trace(String id, String spanId, boolean sampled) {
+        this.id = id;
+        this.spanId = spanId;
+        this.sampled = sampled;
+    }
+
+    static Trace start(boolean sampled) {
+        return new Trace(randomId() + randomId(), sampled ? null : randomId(), sampled);
+    }
+
+    /**
+     * The caller's span from a {@link #TRACEPARENT_HEADER}, sampled if the caller sampled the request, empty if
+     * it isn't valid.
+     */
+    static Optional<Trace> fromTraceparent(String traceparent) {
+        var matcher = TRACEPARENT.matcher(traceparent.trim());
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+        var sampled = (Integer.parseInt(matcher.group(3), 16) & 1) == 1;
+        return Optional.of(new Trace(matcher.group(1), matcher.group(2), sampled));
+    }
+
+    public static Optional<Trace> from(ContextView context) {
+        return context.getOrEmpty(Trace.class);
+    }
+
+    /**
+     * A context with only the trace of {@code context}, for work done on behalf of a request that mustn't take on
+     * the rest of its context, like its deadline.
+     */
+    public static Context contextOf(ContextView context) {
+        return from(context).map(Trace::toContext).orElse(Context.empty());
+    }
+
+    public Context toContext() {
+        return Context.of(Trace.class, this);
+    }
+
+    Trace child() {
+        return new Trace(id, randomId(), sampled);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public Optional<String> toTraceparent() {
+        return Optional.ofNullable(spanId).map(span -> "00-" + id + "-" + span + (sampled ? "-01" : "-00"));
+    }
+
+    private static String randomId() {
+        return String.format("%016x", ThreadLocalRandom.current().nextLong());
+    }
+}
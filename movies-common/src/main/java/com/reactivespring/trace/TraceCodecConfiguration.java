@@ -0,0 +1,170 @@
+package com.reactivespring.trace;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.codec.json.AbstractJackson2Decoder;
+import org.springframework.http.codec.json.AbstractJackson2Encoder;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Records decoding and encoding of JSON and Smile bodies as spans of sampled requests, on the server as well as
+ * in the WebClients, named {@code json.decode}, {@code smile.encode} and so on with the type as attribute. Only
+ * registered while tracing is enabled.
+ * <p>
+ * A body read whole is timed from its last byte to its value, a single value written from the value to its bytes.
+ * A body decoded one value at a time is timed as a whole, so its span includes waiting for the bytes. Values
+ * written one at a time are encoded as they are produced, by stages that have spans of their own, so they get
+ * none here.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "movies.trace", name = "enabled", havingValue = "true")
+public class TraceCodecConfiguration {
+
+    // what the Smile codecs handle by default, their ObjectMapper constructors otherwise fall back to JSON's
+    private static final MimeType[] SMILE_MIME_TYPES = {
+            new MimeType("application", "x-jackson-smile"), new MimeType("application", "stream+x-jackson-smile")};
+
+    @Bean
+    // after Spring Boot's, which sets the JSON codecs replaced here
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public CodecCustomizer traceCodecCustomizer(ObjectMapper objectMapper, Tracer tracer) {
+        var smileMapper = Jackson2ObjectMapperBuilder.smile().build();
+        return configurer -> {
+            var codecs = configurer.defaultCodecs();
+            codecs.jackson2JsonDecoder(new TracedJsonDecoder(objectMapper, tracer));
+            codecs.jackson2JsonEncoder(new TracedJsonEncoder(objectMapper, tracer));
+            codecs.jackson2SmileDecoder(new TracedSmileDecoder(smileMapper, tracer));
+            codecs.jackson2SmileEncoder(new TracedSmileEncoder(smileMapper, tracer));
+        };
+    }
+
+    private static Supplier<Map<String, String>> type(ResolvableType elementType) {
+        return () -> Map.of("type", elementType.toString());
+    }
+
+    // what AbstractJackson2Decoder does, with only the decoding of the joined buffer in the span
+    private static Mono<Object> decodeToMono(AbstractJackson2Decoder decoder, Tracer tracer, String stage,
+                                             Publisher<DataBuffer> input, ResolvableType elementType,
+                                             MimeType mimeType, Map<String, Object> hints) {
+        return DataBufferUtils.join(input, decoder.getMaxInMemorySize())
+                .flatMap(buffer -> Mono.fromSupplier(() -> decoder.decode(buffer, elementType, mimeType, hints))
+                        .transform(tracer.mono(stage, type(elementType))));
+    }
+
+    // what AbstractJackson2Encoder does for a single value, without subscribing to it within the span, which would
+    // make the stages producing it children of the encoding
+    private static Flux<DataBuffer> encode(AbstractJackson2Encoder encoder, Tracer tracer, String stage,
+                                           Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                           ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        return Mono.from(inputStream)
+                .flatMap(value -> Mono.fromSupplier(() -> encoder.encodeValue(value, bufferFactory, elementType, mimeType, hints))
+                        .transform(tracer.mono(stage, type(elementType))))
+                .flux();
+    }
+
+    static class TracedJsonDecoder extends Jackson2JsonDecoder {
+
+        private final Tracer tracer;
+
+        TracedJsonDecoder(ObjectMapper objectMapper, Tracer tracer) {
+            super(objectMapper);
+            this.tracer = tracer;
+        }
+
+        @Override
+        public Flux<Object> decode(Publisher<DataBuffer> input, ResolvableType elementType, MimeType mimeType,
+                                   Map<String, Object> hints) {
+            return super.decode(input, elementType, mimeType, hints)
+                    .transform(tracer.flux("json.decode", type(elementType)));
+        }
+
+        @Override
+        public Mono<Object> decodeToMono(Publisher<DataBuffer> input, ResolvableType elementType, MimeType mimeType,
+                                         Map<String, Object> hints) {
+            return TraceCodecConfiguration.decodeToMono(this, tracer, "json.decode", input, elementType, mimeType, hints);
+        }
+    }
+
+    static class TracedSmileDecoder extends Jackson2SmileDecoder {
+
+        private final Tracer tracer;
+
+        TracedSmileDecoder(ObjectMapper objectMapper, Tracer tracer) {
+            super(objectMapper, SMILE_MIME_TYPES);
+            this.tracer = tracer;
+        }
+
+        @Override
+        public Flux<Object> decode(Publisher<DataBuffer> input, ResolvableType elementType, MimeType mimeType,
+                                   Map<String, Object> hints) {
+            return super.decode(input, elementType, mimeType, hints)
+                    .transform(tracer.flux("smile.decode", type(elementType)));
+        }
+
+        @Override
+        public Mono<Object> decodeToMono(Publisher<DataBuffer> input, ResolvableType elementType, MimeType mimeType,
+                                         Map<String, Object> hints) {
+            return TraceCodecConfiguration.decodeToMono(this, tracer, "smile.decode", input, elementType, mimeType, hints);
+        }
+    }
+
+    static class TracedJsonEncoder extends Jackson2JsonEncoder {
+
+        private final Tracer tracer;
+
+        TracedJsonEncoder(ObjectMapper objectMapper, Tracer tracer) {
+            super(objectMapper);
+            this.tracer = tracer;
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                       ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+            if (!(inputStream instanceof Mono)) {
+                return super.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+            }
+            return TraceCodecConfiguration.encode(this, tracer, "json.encode", inputStream, bufferFactory, elementType,
+                    mimeType, hints);
+        }
+    }
+
+    static class TracedSmileEncoder extends Jackson2SmileEncoder {
+
+        private final Tracer tracer;
+
+        TracedSmileEncoder(ObjectMapper objectMapper, Tracer tracer) {
+            super(objectMapper, SMILE_MIME_TYPES);
+            this.tracer = tracer;
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                       ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+            if (!(inputStream instanceof Mono)) {
+                return super.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+            }
+            return TraceCodecConfiguration.encode(this, tracer, "smile.encode", inputStream, bufferFactory, elementType,
+                    mimeType, hints);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.reactivespring.trace;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+
+/**
+ * Sampled request tracing, bound from {@code movies.trace}.
+ */
+@Data
+@ConfigurationProperties(prefix = "movies.trace")
+public class TraceProperties {
+
+    private boolean enabled = false;
+    // share of the requests that are traced, between 0 and 1, for requests that don't come with a traceparent
+    private double sampleRate = 0.01;
+    // spans are appended to this file instead of logged, when set
+    private Path file;
+}
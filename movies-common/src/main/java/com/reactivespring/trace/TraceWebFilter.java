@@ -0,0 +1,46 @@
+package com.reactivespring.trace;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Joins the trace of a caller that sent a {@link Trace#TRACEPARENT_HEADER}, sampled or not as the caller decided,
+ * and samples the other requests for the {@link Tracer}. A sampled request is recorded as a {@code request} span
+ * with its method, path and status. It runs first, so the span covers the other filters as well.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class TraceWebFilter implements WebFilter {
+
+    private final Tracer tracer;
+
+    public TraceWebFilter(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var request = exchange.getRequest();
+        var traceparent = request.getHeaders().getFirst(Trace.TRACEPARENT_HEADER);
+        var trace = traceparent == null ? null : tracer.join(traceparent);
+        if (trace == null) {
+            trace = tracer.sample();
+        }
+        if (!trace.isSampled()) {
+            return chain.filter(exchange).contextWrite(trace.toContext());
+        }
+
+        return chain.filter(exchange)
+                .transform(tracer.mono("request", () -> Map.of("method", request.getMethodValue(),
+                        "path", request.getPath().value(),
+                        "status", String.valueOf(exchange.getResponse().getRawStatusCode()))))
+                .contextWrite(trace.toContext());
+    }
+}
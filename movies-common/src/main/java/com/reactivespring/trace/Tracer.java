@@ -0,0 +1,166 @@
+package com.reactivespring.trace;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Records the stages of sampled requests as spans, in place of {@code log()} which logs every signal of every
+ * request.
+ * <p>
+ * A stage is wrapped with {@code transform(tracer.mono("stage"))}. For a request with a sampled {@link Trace} it
+ * becomes a child of the span it runs in, and stages and calls started within it become its children in turn. Once it is
+ * over it goes to the {@link SpanExporter} with when it started, how long it took to its first element and to its
+ * end, how many elements it had and how it ended. While tracing is disabled the operators are the identity and the
+ * stage is left as it is.
+ */
+@Component
+@EnableConfigurationProperties(TraceProperties.class)
+public class Tracer implements DisposableBean {
+
+    private static final Supplier<Map<String, String>> NO_ATTRIBUTES = Map::of;
+
+    private final boolean enabled;
+    private final double sampleRate;
+    private final SpanExporter exporter;
+
+    @Autowired
+    public Tracer(TraceProperties properties, ObjectProvider<SpanExporter> exporter) {
+        this(properties, exporter.getIfAvailable(() -> defaultExporter(properties)));
+    }
+
+    Tracer(TraceProperties properties, SpanExporter exporter) {
+        this.enabled = properties.isEnabled();
+        this.sampleRate = properties.getSampleRate();
+        this.exporter = exporter;
+    }
+
+    /**
+     * A new trace for a request that didn't come with one, sampled at the sample rate and never while tracing is
+     * disabled. The others are traced too, unsampled, so the calls they make tell the downstream services not to
+     * sample them.
+     */
+    public Trace sample() {
+        return Trace.start(enabled && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    /**
+     * The trace of a caller that sent a {@link Trace#TRACEPARENT_HEADER}, sampled if the caller sampled the
+     * request, null if it isn't valid. While tracing is disabled nothing is recorded for it, but the calls made
+     * within it still send it on.
+     */
+    public Trace join(String traceparent) {
+        return Trace.fromTraceparent(traceparent).orElse(null);
+    }
+
+    public <T> Function<Mono<T>, Mono<T>> mono(String stage) {
+        return mono(stage, NO_ATTRIBUTES);
+    }
+
+    public <T> Function<Flux<T>, Flux<T>> flux(String stage) {
+        return flux(stage, NO_ATTRIBUTES);
+    }
+
+    /**
+     * Like {@link #mono(String)}, with attributes that are taken once the stage is over.
+     */
+    <T> Function<Mono<T>, Mono<T>> mono(String stage, Supplier<Map<String, String>> attributes) {
+        if (!enabled) {
+            return Function.identity();
+        }
+        return source -> Mono.deferContextual(context -> Trace.from(context)
+                .filter(Trace::isSampled)
+                .map(parent -> {
+                    var span = new SpanTiming(parent, stage, attributes);
+                    return source.doOnSubscribe(subscription -> span.subscribed())
+                            .doOnNext(value -> span.element())
+                            .doFinally(span::finished)
+                            .contextWrite(span.trace.toContext());
+                })
+                .orElse(source));
+    }
+
+    <T> Function<Flux<T>, Flux<T>> flux(String stage, Supplier<Map<String, String>> attributes) {
+        if (!enabled) {
+            return Function.identity();
+        }
+        return source -> Flux.deferContextual(context -> Trace.from(context)
+                .filter(Trace::isSampled)
+                .map(parent -> {
+                    var span = new SpanTiming(parent, stage, attributes);
+                    return source.doOnSubscribe(subscription -> span.subscribed())
+                            .doOnNext(value -> span.element())
+                            .doFinally(span::finished)
+                            .contextWrite(span.trace.toContext());
+                })
+                .orElse(source));
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (exporter instanceof Closeable) {
+            ((Closeable) exporter).close();
+        }
+    }
+
+    private static SpanExporter defaultExporter(TraceProperties properties) {
+        if (properties.isEnabled() && properties.getFile() != null) {
+            return new FileSpanExporter(properties.getFile());
+        }
+        return new LogSpanExporter();
+    }
+
+    private class SpanTiming {
+
+        private final Trace parent;
+        private final Trace trace;
+        private final String stage;
+        private final Supplier<Map<String, String>> attributes;
+
+        // signals of a stage are serialized, so plain fields do
+        private Instant start;
+        private long subscribedNanos;
+        private long firstNanos;
+        private long elements;
+
+        SpanTiming(Trace parent, String stage, Supplier<Map<String, String>> attributes) {
+            this.parent = parent;
+            this.trace = parent.child();
+            this.stage = stage;
+            this.attributes = attributes;
+        }
+
+        void subscribed() {
+            start = Instant.now();
+            subscribedNanos = System.nanoTime();
+        }
+
+        void element() {
+            if (elements++ == 0) {
+                firstNanos = System.nanoTime();
+            }
+        }
+
+        void finished(SignalType signal) {
+            var now = System.nanoTime();
+            exporter.export(new Span(trace.getId(), trace.getSpanId(), parent.getSpanId(), stage,
+                    ChronoUnit.MICROS.between(Instant.EPOCH, start),
+                    elements == 0 ? -1 : (firstNanos - subscribedNanos) / 1000, (now - subscribedNanos) / 1000,
+                    elements, signal.toString(), attributes.get()));
+        }
+    }
+}
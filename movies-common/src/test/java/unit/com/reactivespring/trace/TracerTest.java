@@ -0,0 +1,125 @@
+package com.reactivespring.trace;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TracerTest {
+
+    List<Span> spans = new CopyOnWriteArrayList<>();
+
+    @Test
+    void disabledLeavesStagesAsTheyAre() {
+        var tracer = tracer(false, 1.0);
+        var mono = Mono.just("movie");
+        var flux = Flux.just("review");
+
+        assertSame(mono, mono.transform(tracer.mono("movieInfo")));
+        assertSame(flux, flux.transform(tracer.flux("reviews")));
+        assertFalse(tracer.sample().isSampled());
+        // passed on as the caller sent it
+        assertEquals("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01",
+                tracer.join("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01").toTraceparent().get());
+    }
+
+    @Test
+    void requestsAreSampled() {
+        var unsampled = tracer(true, 0).sample();
+        assertFalse(unsampled.isSampled());
+        assertTrue(unsampled.toTraceparent().get().matches("00-[0-9a-f]{32}-[0-9a-f]{16}-00"));
+        assertTrue(tracer(true, 1.0).sample().isSampled());
+    }
+
+    @Test
+    void stagesOfSampledRequestsAreExported() {
+        var tracer = tracer(true, 1.0);
+        var trace = tracer.sample();
+
+        StepVerifier.create(Flux.just("first", "second")
+                        .transform(tracer.flux("reviews"))
+                        .contextWrite(trace.toContext()))
+                .expectNext("first", "second")
+                .verifyComplete();
+
+        // not sampled, nothing to export
+        StepVerifier.create(Mono.just("movie").transform(tracer.mono("movieInfo")))
+                .expectNext("movie")
+                .verifyComplete();
+
+        assertEquals(1, spans.size(), spans::toString);
+        var span = spans.get(0);
+        assertEquals(trace.getId(), span.getTraceId());
+        assertNull(span.getParentId());
+        assertEquals("reviews", span.getName());
+        assertEquals("onComplete", span.getOutcome());
+        assertEquals(2, span.getElements());
+    }
+
+    @Test
+    void nestedStagesAreChildSpans() {
+        var tracer = tracer(true, 0);
+        var trace = tracer.join("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01");
+
+        var inner = Mono.deferContextual(context -> Mono.justOrEmpty(Trace.from(context)))
+                .transform(tracer.mono("movieInfo.attempt"))
+                .transform(tracer.mono("movieInfo"))
+                .contextWrite(trace.toContext())
+                .block();
+
+        assertEquals(2, spans.size(), spans::toString);
+        var attempt = span("movieInfo.attempt");
+        var movieInfo = span("movieInfo");
+        assertEquals("0af7651916cd43dd8448eb211c80319c", movieInfo.getTraceId());
+        assertEquals("b7ad6b7169203331", movieInfo.getParentId());
+        assertEquals(movieInfo.getSpanId(), attempt.getParentId());
+        // what a call made within the attempt sends downstream
+        assertEquals("00-0af7651916cd43dd8448eb211c80319c-" + attempt.getSpanId() + "-01", inner.toTraceparent().get());
+    }
+
+    @Test
+    void unsampledTraceparentsAreJoinedWithoutSpans() {
+        var tracer = tracer(true, 1.0);
+        var trace = tracer.join("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-00");
+
+        var inner = Mono.deferContextual(context -> Mono.justOrEmpty(Trace.from(context)))
+                .transform(tracer.mono("movieInfo"))
+                .contextWrite(trace.toContext())
+                .block();
+
+        assertFalse(trace.isSampled());
+        assertEquals(List.of(), spans);
+        // sent on unsampled, so the downstream service doesn't sample it either
+        assertEquals("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-00", inner.toTraceparent().get());
+    }
+
+    @Test
+    void invalidTraceparentsAreNotJoined() {
+        var tracer = tracer(true, 1.0);
+
+        assertNull(tracer.join("0af7651916cd43dd8448eb211c80319c"));
+        assertNull(tracer.join("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331"));
+        assertEquals("0af7651916cd43dd8448eb211c80319c",
+                tracer.join("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01").getId());
+    }
+
+    private Span span(String name) {
+        return spans.stream().filter(span -> span.getName().equals(name)).findFirst().orElseThrow();
+    }
+
+    private Tracer tracer(boolean enabled, double sampleRate) {
+        var properties = new TraceProperties();
+        properties.setEnabled(enabled);
+        properties.setSampleRate(sampleRate);
+        return new Tracer(properties, spans::add);
+    }
+}
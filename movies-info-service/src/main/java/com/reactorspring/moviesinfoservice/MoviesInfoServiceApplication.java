@@ -2,11 +2,16 @@ package com.reactorspring.moviesinfoservice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import reactor.core.scheduler.Schedulers;
 
-@SpringBootApplication
+// request tracing and deadlines, shared with the other services in movies-common
+@SpringBootApplication(scanBasePackages = {"com.reactorspring.moviesinfoservice", "com.reactivespring.trace",
+		"com.reactivespring.deadline"})
 public class MoviesInfoServiceApplication {
 
 	public static void main(String[] args) {
+		// tasks, queue sizes and busy threads of the Reactor schedulers, before any of them is created
+		Schedulers.enableMetrics();
 		SpringApplication.run(MoviesInfoServiceApplication.class, args);
 	}
 
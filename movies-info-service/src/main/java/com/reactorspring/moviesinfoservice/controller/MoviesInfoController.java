@@ -1,54 +1,106 @@
 package com.reactorspring.moviesinfoservice.controller;
 
 import com.reactorspring.moviesinfoservice.domain.MovieInfo;
+import com.reactorspring.moviesinfoservice.service.MovieInfoBroadcaster;
 import com.reactorspring.moviesinfoservice.service.MovieInfoService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import javax.validation.Valid;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/v1")
 public class MoviesInfoController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    // what a list can be narrowed down to with fields=
+    private static final Set<String> FIELDS = Set.of("movieInfoId", "name", "year", "casts", "releaseDate", "version");
+
     MovieInfoService movieInfoService;
 
-    public MoviesInfoController(MovieInfoService movieInfoService) {
+    MovieInfoBroadcaster movieInfoBroadcaster;
+
+    public MoviesInfoController(MovieInfoService movieInfoService, MovieInfoBroadcaster movieInfoBroadcaster) {
         this.movieInfoService = movieInfoService;
+        this.movieInfoBroadcaster = movieInfoBroadcaster;
     }
 
-    Sinks.Many<MovieInfo> movieInfoSink = Sinks.many().replay().all();
+    @Value("${movieInfo.page.defaultLimit:100}")
+    private int defaultLimit;
 
-    @GetMapping("/movieInfos")
-    public Flux<MovieInfo> getAllMovies(@RequestParam(value="year", required = false) Integer year ) {
-        if(year != null)
-            return movieInfoService.findByYear(year);
+    @Value("${movieInfo.page.maxLimit:500}")
+    private int maxLimit;
 
-        return movieInfoService.getAllMovies();
+    @GetMapping("/movieInfos")
+    public Mono<ResponseEntity<List<MovieInfo>>> getAllMovies(@RequestParam(value="year", required = false) Integer year,
+                                                              @RequestParam(value="cursor", required = false) String cursor,
+                                                              @RequestParam(value="limit", required = false) Integer limit,
+                                                              @RequestParam(value="fields", required = false) String fields) {
+        // the fields left out aren't read from MongoDB and, being null, aren't written either
+        var projection = projection(fields);
+        var pageSize = pageSize(limit);
+        var afterId = decodeCursor(cursor);
+
+        // one extra row tells whether there is a next page
+        var rows = year == null
+                ? movieInfoService.getMoviesPage(afterId, pageSize + 1, projection)
+                : movieInfoService.getMoviesPageByYear(year, afterId, pageSize + 1, projection);
+
+        return rows
+                .collectList()
+                .map(movieInfos -> {
+                    if (movieInfos.size() <= pageSize) {
+                        return ResponseEntity.ok().body(movieInfos);
+                    }
+                    var page = movieInfos.subList(0, pageSize);
+                    return ResponseEntity.ok()
+                            .header(NEXT_CURSOR_HEADER, encodeCursor(page.get(pageSize - 1).getMovieInfoId()))
+                            .body(page);
+                });
     }
 
     @GetMapping("/movieInfos/{id}")
     public Mono<ResponseEntity<MovieInfo>> getAllMovies(@PathVariable String id) {
+        // a matching If-None-Match is answered with 304 and no body
         return movieInfoService.getMovieInfoById(id)
-                .map(ResponseEntity.ok()::body)
+                .map(movieInfo -> {
+                    var response = ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT);
+                    if (movieInfo.getVersion() != null) {
+                        response.eTag(String.valueOf(movieInfo.getVersion()));
+                    }
+                    return response.body(movieInfo);
+                })
                 .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
     }
 
+    @PostMapping("/movieInfos/batch")
+    public Flux<MovieInfo> getMovieInfosByIds(@RequestBody List<String> ids) {
+        return movieInfoService.getMovieInfosByIds(ids);
+    }
+
     @GetMapping(value = "/movieInfos/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
     public Flux<MovieInfo> getMoviesStream() {
-        return movieInfoSink.asFlux();
+        return movieInfoBroadcaster.subscribe();
     }
 
     @PostMapping("/movieInfos")
     @ResponseStatus(HttpStatus.CREATED)
     public Mono<MovieInfo> addMovieInfo(@RequestBody @Valid MovieInfo movieInfo) {
 
-        return movieInfoService.save(movieInfo).doOnNext(movieInfoSink::tryEmitNext);
+        return movieInfoService.save(movieInfo).doOnNext(movieInfoBroadcaster::publish);
     }
 
     @PutMapping("/movieInfos/{id}")
@@ -56,6 +108,7 @@ public class MoviesInfoController {
     public Mono<ResponseEntity<MovieInfo>> updateMovie(@RequestBody @Valid MovieInfo movieInfo, @PathVariable String id) {
 
         return movieInfoService.updateMovie(movieInfo,id)
+                .doOnNext(movieInfoBroadcaster::publish)
                 .map(ResponseEntity.ok()::body)
                 .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
     }
@@ -63,7 +116,48 @@ public class MoviesInfoController {
     @DeleteMapping("/movieInfos/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public Mono<Void> deleteMovie(@PathVariable String id) {
-        return movieInfoService.deleteMovie(id);
+        // deletes are published as an id-only MovieInfo so stream consumers can drop the movie
+        return movieInfoService.deleteMovie(id)
+                .doOnSuccess(unused -> movieInfoBroadcaster.publish(new MovieInfo(id, null, null, null, null)));
     }
 
+    private int pageSize(Integer limit) {
+        if (limit == null) {
+            return defaultLimit;
+        }
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit should be a positive integer");
+        }
+        return Math.min(limit, maxLimit);
+    }
+
+    private static Set<String> projection(String fields) {
+        var projection = new LinkedHashSet<String>();
+        if (fields == null) {
+            return projection;
+        }
+        for (var field : fields.split(",")) {
+            field = field.trim();
+            if (!FIELDS.contains(field)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown field : " + field);
+            }
+            projection.add(field);
+        }
+        return projection;
+    }
+
+    private static String encodeCursor(String movieInfoId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(movieInfoId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor : " + cursor);
+        }
+    }
 }
@@ -1,9 +1,14 @@
 package com.reactorspring.moviesinfoservice.domain;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.NotBlank;
@@ -16,11 +21,16 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+// the movie infos of a year in _id order, for paging through them
+@CompoundIndex(name = "year_id", def = "{'year': 1, '_id': 1}")
+// fields left out of a projection are null and not worth sending
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class MovieInfo {
 
     @Id
     private String movieInfoId;
     @NotBlank(message = "movieInfo.name should not be blank")
+    @Indexed
     private String name;
     @NotNull
     @Positive(message = "movieInfo.year should be a possitive integer")
@@ -28,4 +38,13 @@ public class MovieInfo {
 
     private List<@NotBlank(message = "movieInfo.cast should be present") String> casts;
     private LocalDate releaseDate;
+
+    // bumped by every save, it is the ETag of the movie info and can't be set by clients
+    @Version
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long version;
+
+    public MovieInfo(String movieInfoId, String name, Integer year, List<String> casts, LocalDate releaseDate) {
+        this(movieInfoId, name, year, casts, releaseDate, null);
+    }
 }
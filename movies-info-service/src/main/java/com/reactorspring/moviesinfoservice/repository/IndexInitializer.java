@@ -0,0 +1,64 @@
+package com.reactorspring.moviesinfoservice.repository;
+
+import com.reactorspring.moviesinfoservice.domain.MovieInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Creates the indexes declared on the documents with {@code @Indexed} and {@code @CompoundIndex} once the
+ * application has started, before it reports itself ready, and checks that MongoDB has them all. Creating an index
+ * that already exists does nothing. An index that can't be created, e.g. because one on the same keys with other
+ * options is in the way, fails the startup instead of leaving the queries to scan whole collections.
+ */
+@Component
+@Slf4j
+public class IndexInitializer {
+
+    private static final List<Class<?>> DOCUMENTS = List.of(MovieInfo.class);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public IndexInitializer(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void createIndexes() {
+        var resolver = IndexResolver.create(reactiveMongoTemplate.getConverter().getMappingContext());
+        Flux.fromIterable(DOCUMENTS)
+                .concatMap(document -> createIndexes(resolver, document))
+                .blockLast();
+    }
+
+    private Mono<Void> createIndexes(IndexResolver resolver, Class<?> document) {
+        var collection = reactiveMongoTemplate.getCollectionName(document);
+        var indexOps = reactiveMongoTemplate.indexOps(document);
+        return Flux.fromIterable(resolver.resolveIndexFor(document))
+                .concatMap(indexOps::ensureIndex)
+                .collectList()
+                .flatMap(created -> indexOps.getIndexInfo()
+                        .map(IndexInfo::getName)
+                        .collect(Collectors.toSet())
+                        .flatMap(existing -> {
+                            var missing = created.stream()
+                                    .filter(name -> !existing.contains(name))
+                                    .collect(Collectors.toList());
+                            if (!missing.isEmpty()) {
+                                return Mono.error(new IllegalStateException(
+                                        "Indexes " + missing + " of " + collection + " missing after creating them"));
+                            }
+                            log.info("Indexes of {}: {}", collection, existing);
+                            return Mono.empty();
+                        }));
+    }
+}
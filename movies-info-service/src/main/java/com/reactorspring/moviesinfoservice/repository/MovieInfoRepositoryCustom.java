@@ -0,0 +1,27 @@
+package com.reactorspring.moviesinfoservice.repository;
+
+import com.reactorspring.moviesinfoservice.domain.MovieInfo;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+public interface MovieInfoRepositoryCustom {
+
+    /**
+     * Keyset page in {@code _id} order : at most {@code limit} movie infos with an id after {@code afterId},
+     * or from the start when it is null. Only the given {@code fields} and the id are read, all of them when
+     * there are none.
+     */
+    Flux<MovieInfo> findPage(String afterId, int limit, Collection<String> fields);
+
+    /**
+     * Keyset page of the movie infos of a year, like {@link #findPage(String, int, Collection)}.
+     */
+    Flux<MovieInfo> findPageByYear(Integer year, String afterId, int limit, Collection<String> fields);
+
+    /**
+     * Sets version 0 on movie infos saved before they were versioned, and returns how many there were.
+     */
+    Mono<Long> initVersions();
+}
@@ -0,0 +1,76 @@
+package com.reactorspring.moviesinfoservice.repository;
+
+import com.reactivespring.deadline.Deadline;
+import com.reactorspring.moviesinfoservice.domain.MovieInfo;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+
+public class MovieInfoRepositoryImpl implements MovieInfoRepositoryCustom {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MovieInfoRepositoryImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Flux<MovieInfo> findPage(String afterId, int limit, Collection<String> fields) {
+        return findPage(after(afterId), limit, fields);
+    }
+
+    @Override
+    public Flux<MovieInfo> findPageByYear(Integer year, String afterId, int limit, Collection<String> fields) {
+        return findPage(new Criteria().andOperator(Criteria.where("year").is(year), after(afterId)), limit, fields);
+    }
+
+    private Flux<MovieInfo> findPage(Criteria criteria, int limit, Collection<String> fields) {
+        var query = new Query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "_id"))
+                .limit(limit);
+        // MongoDB returns _id whether it's asked for or not, the cursor of the next page is made from it
+        fields.forEach(query.fields()::include);
+
+        // MongoDB gives up on the query itself once the caller's deadline has passed
+        return Flux.deferContextual(context -> {
+            Deadline.from(context).ifPresent(deadline -> query.maxTime(atLeastOneMilli(deadline.remaining())));
+            return reactiveMongoTemplate.find(query, MovieInfo.class);
+        });
+    }
+
+    @Override
+    public Mono<Long> initVersions() {
+        return reactiveMongoTemplate.updateMulti(new Query(Criteria.where("version").exists(false)),
+                        Update.update("version", 0L), MovieInfo.class)
+                .map(UpdateResult::getModifiedCount);
+    }
+
+    private static Criteria after(String afterId) {
+        if (afterId == null) {
+            return new Criteria();
+        }
+        if (ObjectId.isValid(afterId)) {
+            return Criteria.where("_id").gt(new ObjectId(afterId));
+        }
+        // ids given on insert stay strings, generated ones are ObjectIds which sort after every string,
+        // and $gt on a string value only ever matches strings
+        return new Criteria().orOperator(
+                Criteria.where("_id").gt(afterId),
+                Criteria.where("_id").type(JsonSchemaObject.Type.objectIdType()));
+    }
+
+    private static Duration atLeastOneMilli(Duration remaining) {
+        // a max time of 0 would mean no limit at all
+        return remaining.toMillis() < 1 ? Duration.ofMillis(1) : remaining;
+    }
+}
@@ -0,0 +1,36 @@
+package com.reactorspring.moviesinfoservice.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gives movie infos saved before they were versioned version 0 on startup. Without a version a movie info would be
+ * taken for a new one on its next save and inserted again. The server is already listening by then, so readiness is
+ * held at {@link ReadinessState#REFUSING_TRAFFIC} until this is done and traffic routed by
+ * {@code /actuator/health/readiness} only arrives afterwards. A request sent straight to the port can still see a
+ * movie info without one.
+ */
+@Component
+@Slf4j
+public class MovieInfoVersionInitializer {
+
+    private final MovieInfoRepository movieInfoRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public MovieInfoVersionInitializer(MovieInfoRepository movieInfoRepository, ApplicationEventPublisher eventPublisher) {
+        this.movieInfoRepository = movieInfoRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void initVersions() {
+        // Boot reports the application ready once every listener of ApplicationStartedEvent has returned
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        log.info("Versioned {} movie infos", movieInfoRepository.initVersions().block());
+    }
+}
@@ -0,0 +1,109 @@
+package com.reactorspring.moviesinfoservice.service;
+
+import com.reactorspring.moviesinfoservice.domain.MovieInfo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans out MovieInfo changes to the /movieInfos/stream subscribers.
+ * <p>
+ * New subscribers get at most the configured replay (nothing, the last N events or the events of the last
+ * duration) instead of the whole history. Every subscriber has its own bounded buffer, a slow consumer that
+ * fills it either loses its oldest events (DROP) or has its stream completed (DISCONNECT) so it can reconnect,
+ * it never holds back the other subscribers.
+ */
+@Component
+public class MovieInfoBroadcaster {
+
+    public enum ReplayMode { NONE, LAST, DURATION }
+
+    public enum OverflowPolicy { DROP, DISCONNECT }
+
+    private final Sinks.Many<MovieInfo> sink;
+    private final int bufferSize;
+    private final OverflowPolicy overflowPolicy;
+
+    private final AtomicInteger buffered = new AtomicInteger();
+    private final Counter dropped;
+    private final Counter disconnected;
+
+    public MovieInfoBroadcaster(@Value("${movieInfo.stream.replay:last}") ReplayMode replayMode,
+                                @Value("${movieInfo.stream.replaySize:100}") int replaySize,
+                                @Value("${movieInfo.stream.replayDuration:5m}") Duration replayDuration,
+                                @Value("${movieInfo.stream.bufferSize:256}") int bufferSize,
+                                @Value("${movieInfo.stream.overflow:drop}") OverflowPolicy overflowPolicy) {
+        this.sink = createSink(replayMode, replaySize, replayDuration);
+        this.bufferSize = bufferSize;
+        this.overflowPolicy = overflowPolicy;
+
+        Gauge.builder("movieinfo.stream.subscribers", sink, Sinks.Many::currentSubscriberCount)
+                .description("Open /movieInfos/stream subscriptions")
+                .register(Metrics.globalRegistry);
+        Gauge.builder("movieinfo.stream.buffered", buffered, AtomicInteger::get)
+                .description("Events waiting in subscriber buffers")
+                .register(Metrics.globalRegistry);
+        this.dropped = Counter.builder("movieinfo.stream.dropped")
+                .description("Events dropped because a subscriber buffer was full")
+                .register(Metrics.globalRegistry);
+        this.disconnected = Counter.builder("movieinfo.stream.disconnected")
+                .description("Subscribers disconnected because their buffer was full")
+                .register(Metrics.globalRegistry);
+    }
+
+    public synchronized void publish(MovieInfo movieInfo) {
+        // synchronized so concurrent requests don't fail each other with FAIL_NON_SERIALIZED
+        sink.tryEmitNext(movieInfo);
+    }
+
+    public Flux<MovieInfo> subscribe() {
+        return Flux.defer(() -> {
+            var depth = new AtomicInteger();
+
+            var stream = sink.asFlux()
+                    .doOnNext(movieInfo -> {
+                        depth.incrementAndGet();
+                        buffered.incrementAndGet();
+                    });
+
+            if (overflowPolicy == OverflowPolicy.DROP) {
+                stream = stream.onBackpressureBuffer(bufferSize, droppedMovieInfo -> {
+                    depth.decrementAndGet();
+                    buffered.decrementAndGet();
+                    dropped.increment();
+                }, BufferOverflowStrategy.DROP_OLDEST);
+            } else {
+                stream = stream.onBackpressureBuffer(bufferSize, droppedMovieInfo -> disconnected.increment(),
+                                BufferOverflowStrategy.ERROR)
+                        .onErrorResume(Exceptions::isOverflow, ex -> Flux.empty());
+            }
+
+            return stream
+                    .doOnNext(movieInfo -> {
+                        depth.decrementAndGet();
+                        buffered.decrementAndGet();
+                    })
+                    .doFinally(signal -> buffered.addAndGet(-depth.getAndSet(0)));
+        });
+    }
+
+    private static Sinks.Many<MovieInfo> createSink(ReplayMode replayMode, int replaySize, Duration replayDuration) {
+        switch (replayMode) {
+            case NONE:
+                return Sinks.many().multicast().directBestEffort();
+            case DURATION:
+                return Sinks.many().replay().limit(replayDuration);
+            default:
+                return Sinks.many().replay().limit(replaySize);
+        }
+    }
+}
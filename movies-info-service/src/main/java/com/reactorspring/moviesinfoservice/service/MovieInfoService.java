@@ -7,6 +7,9 @@ import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+import java.util.List;
+
 @Service
 public class MovieInfoService {
 
@@ -21,14 +24,19 @@ public class MovieInfoService {
         return movieInfoRepository.save(movieInfo);
     }
 
-    public Flux<MovieInfo> getAllMovies() {
-        return movieInfoRepository.findAll();
+    public Flux<MovieInfo> getMoviesPage(String afterId, int limit, Collection<String> fields) {
+        return movieInfoRepository.findPage(afterId, limit, fields);
     }
 
     public Mono<MovieInfo> getMovieInfoById(String id) {
         return movieInfoRepository.findById(id);
     }
 
+    public Flux<MovieInfo> getMovieInfosByIds(List<String> ids) {
+        // resolved with a single $in query on _id instead of one lookup per id
+        return movieInfoRepository.findAllById(ids);
+    }
+
     public Mono<MovieInfo> updateMovie(MovieInfo updateMovieInfo, String id) {
 
         return  movieInfoRepository.findById(id)
@@ -46,7 +54,7 @@ public class MovieInfoService {
         return movieInfoRepository.deleteById(id);
     }
 
-    public Flux<MovieInfo> findByYear(Integer year) {
-        return movieInfoRepository.findByYear(year);
+    public Flux<MovieInfo> getMoviesPageByYear(Integer year, String afterId, int limit, Collection<String> fields) {
+        return movieInfoRepository.findPageByYear(year, afterId, limit, fields);
     }
 }
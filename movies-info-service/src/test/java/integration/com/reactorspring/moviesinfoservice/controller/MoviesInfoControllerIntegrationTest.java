@@ -1,10 +1,12 @@
 package com.reactorspring.moviesinfoservice.controller;
 
+import com.reactorspring.moviesinfoservice.CollectionScanGuard;
 import com.reactorspring.moviesinfoservice.domain.MovieInfo;
 import com.reactorspring.moviesinfoservice.repository.MovieInfoRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
@@ -21,6 +23,7 @@ import static org.junit.jupiter.api.Assertions.*;
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
 @AutoConfigureWebTestClient
+@ExtendWith(CollectionScanGuard.class)
 class MoviesInfoControllerIntegrationTest {
 
     @Autowired
@@ -79,6 +82,33 @@ class MoviesInfoControllerIntegrationTest {
                 .hasSize(3);
     }
 
+    @Test
+    void testGetAll_paged() {
+        // "smnwh" is stored as a string id, the other two get ObjectIds which sort after it
+        var firstPage = webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?limit=2")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2)
+                .returnResult();
+
+        assertEquals("smnwh", firstPage.getResponseBody().get(0).getMovieInfoId());
+        var nextCursor = firstPage.getResponseHeaders().getFirst(MoviesInfoController.NEXT_CURSOR_HEADER);
+        assertNotNull(nextCursor);
+
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?limit=2&cursor={cursor}", nextCursor)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .doesNotExist(MoviesInfoController.NEXT_CURSOR_HEADER)
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
     @Test
     void testGetAllByYear() {
 
@@ -118,6 +148,18 @@ class MoviesInfoControllerIntegrationTest {
                 .jsonPath("$.name").isEqualTo("Spider-man no way home");
     }
 
+    @Test
+    void testGetMovieInfosByIds() {
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL+"/batch")
+                .bodyValue(List.of("smnwh", "not_found"))
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
     @Test
     void testGetMovieById_notFound() {
         webTestClient.get()
@@ -1,27 +1,39 @@
 package com.reactorspring.moviesinfoservice.repository;
 
+import com.reactorspring.moviesinfoservice.CollectionScanGuard;
 import com.reactorspring.moviesinfoservice.domain.MovieInfo;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import reactor.test.StepVerifier;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @DataMongoTest
 @TestPropertySource(properties = "spring.mongodb.embedded.version=3.5.5")
+// the indexes are created the way the application creates them
+@Import(IndexInitializer.class)
 @ActiveProfiles("test")
+@ExtendWith(CollectionScanGuard.class)
 class MovieInfoRepositoryIntegrationTest {
 
     @Autowired
     MovieInfoRepository movieInfoRepository;
 
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
     @BeforeEach
     void setUp() {
         var list = List.of(new MovieInfo(null, "Batman bigins", 2008, List.of("Christian Bale", "Michael cane"), LocalDate.parse("2005-04-23")),
@@ -32,6 +44,15 @@ class MovieInfoRepositoryIntegrationTest {
                 .blockLast();
     }
 
+    @Test
+    void indexesTest() {
+        var indexes = reactiveMongoTemplate.indexOps(MovieInfo.class).getIndexInfo().map(IndexInfo::getName);
+
+        StepVerifier.create(indexes.collectList())
+                .assertNext(names -> assertTrue(names.containsAll(List.of("year", "name")), names::toString))
+                .verifyComplete();
+    }
+
     @Test
     void findAllTest() {
 
@@ -101,6 +122,38 @@ class MovieInfoRepositoryIntegrationTest {
     }
 
 
+    @Test
+    void findPageByYearTest() {
+        var firstPage = movieInfoRepository.findPageByYear(2008, null, 1, Set.of()).collectList().block();
+
+        assertEquals(1, firstPage.size());
+        assertEquals(2008, firstPage.get(0).getYear());
+
+        var secondPage = movieInfoRepository.findPageByYear(2008, firstPage.get(0).getMovieInfoId(), 2, Set.of());
+
+        StepVerifier.create(secondPage)
+                .assertNext(movieInfo -> {
+                    assertEquals(2008, movieInfo.getYear());
+                    assertNotEquals(firstPage.get(0).getMovieInfoId(), movieInfo.getMovieInfoId());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void findByYearProjectedTest() {
+        var _2008Movies = movieInfoRepository.findPageByYear(2008, null, 10, Set.of("name"));
+
+        StepVerifier.create(_2008Movies)
+                .thenConsumeWhile(movieInfo -> {
+                    assertNotNull(movieInfo.getMovieInfoId());
+                    assertNotNull(movieInfo.getName());
+                    assertNull(movieInfo.getYear());
+                    assertNull(movieInfo.getCasts());
+                    return true;
+                })
+                .verifyComplete();
+    }
+
     @Test
     void findByName() {
         var movieByName = movieInfoRepository.findByName("Ironman");
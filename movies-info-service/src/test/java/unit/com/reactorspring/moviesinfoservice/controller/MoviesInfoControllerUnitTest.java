@@ -1,28 +1,51 @@
 package com.reactorspring.moviesinfoservice.controller;
 
+import com.reactivespring.deadline.Deadline;
+import com.reactivespring.trace.Span;
+import com.reactivespring.trace.SpanExporter;
+import com.reactivespring.trace.Trace;
+import com.reactivespring.trace.Tracer;
 import com.reactorspring.moviesinfoservice.domain.MovieInfo;
+import com.reactorspring.moviesinfoservice.service.MovieInfoBroadcaster;
 import com.reactorspring.moviesinfoservice.service.MovieInfoService;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 
-@WebFluxTest(controllers = MoviesInfoController.class)
+// only the requests movies-service sends with a traceparent are traced
+@WebFluxTest(controllers = MoviesInfoController.class,
+        properties = {"movies.trace.enabled=true", "movies.trace.sampleRate=0"})
+@Import({MovieInfoBroadcaster.class, Tracer.class})
 @AutoConfigureWebTestClient
 class MoviesInfoControllerUnitTest {
 
@@ -33,6 +56,9 @@ class MoviesInfoControllerUnitTest {
     @MockBean
     MovieInfoService movieInfoService;
 
+    @MockBean
+    SpanExporter spanExporter;
+
 
     @Test
     void testGetAllMovieInfos() {
@@ -40,17 +66,140 @@ class MoviesInfoControllerUnitTest {
                 new MovieInfo(null, "Ironman", 2008, List.of("Rober Downey", "Michael worne"), LocalDate.parse("2008-11-23")),
                 new MovieInfo("smnwh", "Spider-man no way home", 2022, List.of("Tom Holland", "Bennadict cumberbatch"), LocalDate.parse("2022-04-23")));
 
-        when(movieInfoService.getAllMovies()).thenReturn(Flux.fromIterable(list));
+        when(movieInfoService.getMoviesPage(null, 101, Set.of())).thenReturn(Flux.fromIterable(list));
 
         webTestClient.get()
                 .uri(MOVIE_INFO_URL)
                 .exchange()
                 .expectStatus()
                 .is2xxSuccessful()
+                .expectHeader()
+                .doesNotExist(MoviesInfoController.NEXT_CURSOR_HEADER)
                 .expectBodyList(MovieInfo.class)
                 .hasSize(3);
     }
 
+    @Test
+    void testGetAllMovieInfos_paged() {
+        var list = List.of(new MovieInfo("abc", "Batman bigins", 2005, List.of("Christian Bale", "Michael cane"), LocalDate.parse("2005-04-23")),
+                new MovieInfo("def", "Ironman", 2008, List.of("Rober Downey", "Michael worne"), LocalDate.parse("2008-11-23")),
+                new MovieInfo("smnwh", "Spider-man no way home", 2022, List.of("Tom Holland", "Bennadict cumberbatch"), LocalDate.parse("2022-04-23")));
+
+        when(movieInfoService.getMoviesPage(null, 3, Set.of())).thenReturn(Flux.fromIterable(list));
+        when(movieInfoService.getMoviesPage("def", 3, Set.of())).thenReturn(Flux.just(list.get(2)));
+
+        var nextCursor = webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?limit=2")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2)
+                .returnResult()
+                .getResponseHeaders()
+                .getFirst(MoviesInfoController.NEXT_CURSOR_HEADER);
+
+        assertNotNull(nextCursor);
+
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?limit=2&cursor={cursor}", nextCursor)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .doesNotExist(MoviesInfoController.NEXT_CURSOR_HEADER)
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void testGetAllMovieInfos_byYearPaged() {
+        var list = List.of(new MovieInfo("abc", "Batman bigins", 2008, List.of("Christian Bale", "Michael cane"), LocalDate.parse("2008-04-23")),
+                new MovieInfo("def", "Ironman", 2008, List.of("Rober Downey", "Michael worne"), LocalDate.parse("2008-11-23")),
+                new MovieInfo("ghi", "Dark knight", 2008, List.of("Christian Bale", "Heath Ledger"), LocalDate.parse("2008-07-18")));
+
+        when(movieInfoService.getMoviesPageByYear(2008, null, 3, Set.of())).thenReturn(Flux.fromIterable(list));
+        when(movieInfoService.getMoviesPageByYear(2008, "def", 3, Set.of())).thenReturn(Flux.just(list.get(2)));
+
+        var nextCursor = webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?year=2008&limit=2")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2)
+                .returnResult()
+                .getResponseHeaders()
+                .getFirst(MoviesInfoController.NEXT_CURSOR_HEADER);
+
+        assertNotNull(nextCursor);
+
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?year=2008&limit=2&cursor={cursor}", nextCursor)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .doesNotExist(MoviesInfoController.NEXT_CURSOR_HEADER)
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void testGetAllMovieInfos_limit() {
+        when(movieInfoService.getMoviesPage(null, 501, Set.of())).thenReturn(Flux.empty());
+
+        // capped at movieInfo.page.maxLimit
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?limit=100000")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful();
+
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?limit=0")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void testGetAllMovieInfos_fields() {
+        var list = List.of(new MovieInfo("abc", "Batman bigins", 2005, null, null),
+                new MovieInfo("def", "Ironman", 2008, null, null));
+
+        when(movieInfoService.getMoviesPage(null, 101, Set.of("name", "year"))).thenReturn(Flux.fromIterable(list));
+        when(movieInfoService.getMoviesPageByYear(2008, null, 101, Set.of("name"))).thenReturn(Flux.just(new MovieInfo("def", "Ironman", null, null, null)));
+
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?fields=name, year")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].movieInfoId").isEqualTo("abc")
+                .jsonPath("$[0].name").isEqualTo("Batman bigins")
+                .jsonPath("$[0].year").isEqualTo(2005)
+                .jsonPath("$[0].casts").doesNotHaveJsonPath()
+                .jsonPath("$[0].releaseDate").doesNotHaveJsonPath();
+
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?year=2008&fields=name")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$[0].name").isEqualTo("Ironman")
+                .jsonPath("$[0].year").doesNotHaveJsonPath();
+
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "?fields=name,password")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
     @Test
     void testGetMovieInfoById() {
         var movieInfo = new MovieInfo("smnwh",
@@ -74,6 +223,176 @@ class MoviesInfoControllerUnitTest {
                 });
     }
 
+    @Test
+    void testGetMovieInfoById_smile() {
+        var movieInfo = new MovieInfo("smnwh",
+                "Spider-man no way home",
+                2022,
+                List.of("Tom Holland", "Bennadict cumberbatch"),
+                LocalDate.parse("2022-04-23"));
+
+        when(movieInfoService.getMovieInfoById(Mockito.anyString())).thenReturn(Mono.just(movieInfo));
+
+        // as asked for by movies-service
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL+"/{id}", "smnwh")
+                .header(HttpHeaders.ACCEPT, "application/x-jackson-smile, application/json")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .contentType("application/x-jackson-smile")
+                .expectBody(MovieInfo.class)
+                .consumeWith(movieInfoEntityExchangeResult -> {
+                    var response = movieInfoEntityExchangeResult.getResponseBody();
+                    assert response != null;
+                    assertEquals("Spider-man no way home", response.getName());
+                    assertEquals(LocalDate.parse("2022-04-23"), response.getReleaseDate());
+                });
+
+        // everyone else keeps getting JSON
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL+"/{id}", "smnwh")
+                .header(HttpHeaders.ACCEPT, "*/*")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_JSON);
+    }
+
+    @Test
+    void testGetMovieInfoById_traced() {
+        var movieInfo = new MovieInfo("smnwh", "Spider-man no way home", 2022, List.of("Tom Holland"),
+                LocalDate.parse("2022-04-23"));
+        when(movieInfoService.getMovieInfoById("smnwh")).thenReturn(Mono.just(movieInfo));
+
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL+"/{id}", "smnwh")
+                .header(Trace.TRACEPARENT_HEADER, "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01")
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        var span = ArgumentCaptor.forClass(Span.class);
+        verify(spanExporter).export(span.capture());
+        assertEquals("request", span.getValue().getName());
+        assertEquals("0af7651916cd43dd8448eb211c80319c", span.getValue().getTraceId());
+        // a child of the span movies-service made the call in
+        assertEquals("b7ad6b7169203331", span.getValue().getParentId());
+        assertEquals("/v1/movieInfos/smnwh", span.getValue().getAttributes().get("path"));
+
+        // not sampled by movies-service, not sampled here either
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL+"/{id}", "smnwh")
+                .header(Trace.TRACEPARENT_HEADER, "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-00")
+                .exchange()
+                .expectStatus()
+                .isOk();
+        verifyNoMoreInteractions(spanExporter);
+    }
+
+    @Test
+    void testGetMovieInfoById_notModified() {
+        var movieInfo = new MovieInfo("smnwh",
+                "Spider-man no way home",
+                2022,
+                List.of("Tom Holland", "Bennadict cumberbatch"),
+                LocalDate.parse("2022-04-23"));
+        movieInfo.setVersion(3L);
+
+        when(movieInfoService.getMovieInfoById(Mockito.anyString())).thenReturn(Mono.just(movieInfo));
+
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL+"/{id}", "smnwh")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(HttpHeaders.ETAG, "\"3\"");
+
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL+"/{id}", "smnwh")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"3\"")
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectBody()
+                .isEmpty();
+
+        // changed since
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL+"/{id}", "smnwh")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"2\"")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(MovieInfo.class)
+                .consumeWith(movieInfoEntityExchangeResult ->
+                        assertEquals("Spider-man no way home", movieInfoEntityExchangeResult.getResponseBody().getName()));
+    }
+
+    @Test
+    void testGetMovieInfoById_deadlineExceeded() {
+        var movieInfo = new MovieInfo("smnwh",
+                "Spider-man no way home",
+                2022,
+                List.of("Tom Holland", "Bennadict cumberbatch"),
+                LocalDate.parse("2022-04-23"));
+        var cancelled = new AtomicBoolean();
+
+        when(movieInfoService.getMovieInfoById(Mockito.anyString())).thenReturn(Mono.just(movieInfo)
+                .delayElement(Duration.ofSeconds(2))
+                .doOnCancel(() -> cancelled.set(true)));
+
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL+"/{id}", "smnwh")
+                .header(Deadline.TIMEOUT_HEADER, "200")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(504);
+
+        // the query is cancelled instead of running on for nobody
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void testGetMovieInfosByIds() {
+        var list = List.of(new MovieInfo("bb", "Batman bigins", 2005, List.of("Christian Bale", "Michael cane"), LocalDate.parse("2005-04-23")),
+                new MovieInfo("smnwh", "Spider-man no way home", 2022, List.of("Tom Holland", "Bennadict cumberbatch"), LocalDate.parse("2022-04-23")));
+
+        when(movieInfoService.getMovieInfosByIds(List.of("bb", "smnwh"))).thenReturn(Flux.fromIterable(list));
+
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL+"/batch")
+                .bodyValue(List.of("bb", "smnwh"))
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void testGetMovieInfosByIds_smile() {
+        var list = List.of(new MovieInfo("bb", "Batman bigins", 2005, List.of("Christian Bale", "Michael cane"), LocalDate.parse("2005-04-23")),
+                new MovieInfo("smnwh", "Spider-man no way home", 2022, List.of("Tom Holland", "Bennadict cumberbatch"), LocalDate.parse("2022-04-23")));
+
+        when(movieInfoService.getMovieInfosByIds(List.of("bb", "smnwh"))).thenReturn(Flux.fromIterable(list));
+
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL+"/batch")
+                .header(HttpHeaders.ACCEPT, "application/x-jackson-smile, application/json")
+                .bodyValue(List.of("bb", "smnwh"))
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .contentType("application/x-jackson-smile")
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2);
+    }
+
     @Test
     void addMovieInfo() {
         var newMovie = new MovieInfo("mockID",
@@ -100,6 +419,37 @@ class MoviesInfoControllerUnitTest {
 
     }
 
+    @Test
+    void addMovieInfo_conflict() {
+        var newMovie = new MovieInfo("mockID", "Ironman 2", 2012, List.of("Rober Downey"), LocalDate.parse("2008-11-23"));
+
+        when(movieInfoService.save(isA(MovieInfo.class)))
+                .thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key error")));
+
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL)
+                .bodyValue(newMovie)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    @Test
+    void updateMovie_conflict() {
+        var updateMovie = new MovieInfo(null, "Ironman 3", 2012, List.of("Rober Downey"), LocalDate.parse("2008-11-23"));
+
+        // updated by another request after this one read it
+        when(movieInfoService.updateMovie(isA(MovieInfo.class), isA(String.class)))
+                .thenReturn(Mono.error(new OptimisticLockingFailureException("Version 1 is outdated")));
+
+        webTestClient.put()
+                .uri(MOVIE_INFO_URL+"/{id}", "smnwh")
+                .bodyValue(updateMovie)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+    }
+
     @Test
     void addMovieInfo_validations() {
         var newMovie = new MovieInfo("mockID",
@@ -0,0 +1,71 @@
+package com.reactorspring.moviesinfoservice.service;
+
+import com.reactorspring.moviesinfoservice.domain.MovieInfo;
+import com.reactorspring.moviesinfoservice.service.MovieInfoBroadcaster.OverflowPolicy;
+import com.reactorspring.moviesinfoservice.service.MovieInfoBroadcaster.ReplayMode;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+class MovieInfoBroadcasterTest {
+
+    @Test
+    void replaysOnlyTheLastEvents() {
+        var broadcaster = new MovieInfoBroadcaster(ReplayMode.LAST, 2, Duration.ofMinutes(5), 16, OverflowPolicy.DROP);
+
+        broadcaster.publish(movieInfo("1"));
+        broadcaster.publish(movieInfo("2"));
+        broadcaster.publish(movieInfo("3"));
+
+        StepVerifier.create(broadcaster.subscribe().map(MovieInfo::getMovieInfoId))
+                .expectNext("2", "3")
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void noReplayForNewSubscribers() {
+        var broadcaster = new MovieInfoBroadcaster(ReplayMode.NONE, 2, Duration.ofMinutes(5), 16, OverflowPolicy.DROP);
+
+        broadcaster.publish(movieInfo("1"));
+
+        StepVerifier.create(broadcaster.subscribe().map(MovieInfo::getMovieInfoId))
+                .expectSubscription()
+                .then(() -> broadcaster.publish(movieInfo("2")))
+                .expectNext("2")
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void slowSubscriberDropsOldestEvents() {
+        var broadcaster = new MovieInfoBroadcaster(ReplayMode.NONE, 2, Duration.ofMinutes(5), 2, OverflowPolicy.DROP);
+
+        StepVerifier.create(broadcaster.subscribe().map(MovieInfo::getMovieInfoId), 0)
+                .expectSubscription()
+                .then(() -> List.of("1", "2", "3", "4").forEach(id -> broadcaster.publish(movieInfo(id))))
+                .thenRequest(10)
+                .expectNext("3", "4")
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void slowSubscriberIsDisconnected() {
+        var broadcaster = new MovieInfoBroadcaster(ReplayMode.NONE, 2, Duration.ofMinutes(5), 2, OverflowPolicy.DISCONNECT);
+
+        StepVerifier.create(broadcaster.subscribe().map(MovieInfo::getMovieInfoId), 0)
+                .expectSubscription()
+                .then(() -> List.of("1", "2", "3").forEach(id -> broadcaster.publish(movieInfo(id))))
+                .thenRequest(10)
+                .expectNext("1", "2")
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+    }
+
+    private MovieInfo movieInfo(String id) {
+        return new MovieInfo(id, "Batman bigins", 2005, List.of("Christian Bale"), null);
+    }
+}
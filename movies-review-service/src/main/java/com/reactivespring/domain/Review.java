@@ -1,10 +1,15 @@
 package com.reactivespring.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.Min;
@@ -14,6 +19,10 @@ import javax.validation.constraints.NotNull;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+// the reviews of a movie in _id order, for the lookups by movieInfoId and for paging through them
+@CompoundIndex(name = "movieInfoId_id", def = "{'movieInfoId': 1, '_id': 1}")
+// fields left out of a projection are null and not worth sending
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class Review {
 
     @Id
@@ -23,4 +32,22 @@ public class Review {
     private String comment;
     @Min(value = 0L, message = "rating.negative : please pass a non-negative value")
     private Double rating;
+
+    // bumped by every save, the ETag of a movie's reviews is derived from those of its reviews
+    @Version
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long version;
+
+    // whether the review is counted in the summary of its movie, false for those saved before summaries were kept
+    // until ReviewSummaryInitializer has counted them
+    @JsonIgnore
+    private boolean summarized;
+
+    public Review(String reviewId, Long movieInfoId, String comment, Double rating) {
+        this(reviewId, movieInfoId, comment, rating, null);
+    }
+
+    public Review(String reviewId, Long movieInfoId, String comment, Double rating, Long version) {
+        this(reviewId, movieInfoId, comment, rating, version, false);
+    }
 }
@@ -0,0 +1,39 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Review aggregates of one movie, so readers don't have to load the reviews themselves. Every review write is
+ * followed by an $inc of the summary of its movie. The two are separate writes, a request that fails between them
+ * leaves the summary off by that review, and nothing corrects it later.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class ReviewSummary {
+
+    @Id
+    private Long movieInfoId;
+    private long count;
+    // reviews without a rating are counted but not rated
+    private long ratingCount;
+    private double ratingSum;
+    // number of ratings per whole star, "0" to "10"
+    private Map<String, Long> histogram = new TreeMap<>();
+
+    public static ReviewSummary empty(Long movieInfoId) {
+        return new ReviewSummary(movieInfoId, 0, 0, 0, new TreeMap<>());
+    }
+
+    public Double getAverageRating() {
+        return ratingCount == 0 ? null : ratingSum / ratingCount;
+    }
+}
@@ -5,6 +5,8 @@ import com.reactivespring.exception.ReviewNotFoundException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.web.reactive.error.ErrorWebExceptionHandler;
 import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
@@ -29,6 +31,11 @@ public class ExceptionHandler implements ErrorWebExceptionHandler {
         } else if ( ex instanceof ReviewNotFoundException) {
             exchange.getResponse().setStatusCode(HttpStatus.NOT_FOUND);
             return exchange.getResponse().writeWith(Mono.just(message));
+
+        } else if (ex instanceof OptimisticLockingFailureException || ex instanceof DuplicateKeyException) {
+            // changed by someone else since it was read, or created with an id that is taken
+            exchange.getResponse().setStatusCode(HttpStatus.CONFLICT);
+            return exchange.getResponse().writeWith(Mono.just(message));
         }
 
 
@@ -1,47 +1,90 @@
 package com.reactivespring.handler;
 
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
 import com.reactivespring.exception.ReviewDataException;
 import com.reactivespring.exception.ReviewNotFoundException;
+import com.reactivespring.repository.ReviewChangeStream;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewSummaryRepository;
+import com.reactivespring.trace.Tracer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class ReviewHandler {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    // Smile, Jackson's binary encoding of JSON, asked for by movies-service
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+    public static final MediaType APPLICATION_STREAM_SMILE = new MediaType("application", "stream+x-jackson-smile");
+
+    // short enough to always fit in a long
+    private static final Pattern MOVIE_INFO_ID = Pattern.compile("-?[0-9]{1,18}");
+
+    // what a list can be narrowed down to with fields=
+    private static final Set<String> FIELDS = Set.of("reviewId", "movieInfoId", "comment", "rating", "version");
 
     @Autowired
     Validator validator;
 
+    @Value("${reviews.page.defaultLimit:100}")
+    private int defaultLimit;
+
+    @Value("${reviews.page.maxLimit:500}")
+    private int maxLimit;
+
     ReviewReactiveRepository reviewReactiveRepository;
 
-    public ReviewHandler(ReviewReactiveRepository reviewReactiveRepository) {
+    ReviewSummaryRepository reviewSummaryRepository;
+
+    ReviewChangeStream reviewChangeStream;
+
+    Tracer tracer;
+
+    public ReviewHandler(ReviewReactiveRepository reviewReactiveRepository, ReviewSummaryRepository reviewSummaryRepository,
+                         ReviewChangeStream reviewChangeStream, Tracer tracer) {
         this.reviewReactiveRepository = reviewReactiveRepository;
+        this.reviewSummaryRepository = reviewSummaryRepository;
+        this.reviewChangeStream = reviewChangeStream;
+        this.tracer = tracer;
     }
 
-    Sinks.Many<Review> reviewSinks = Sinks.many().replay().all();
-
     public Mono<ServerResponse> addReview(ServerRequest request) {
 
         return request.bodyToMono(Review.class)
                 .doOnNext(this::validate)
+                // saved as counted before the summary is updated, a request that fails in between leaves it uncounted
+                .doOnNext(review -> review.setSummarized(true))
                 .flatMap(reviewReactiveRepository::save)
-                .doOnNext(reviewSinks::tryEmitNext)
+                .flatMap(review -> reviewSummaryRepository.applyChange(review.getMovieInfoId(), null, review).thenReturn(review))
                 .flatMap(ServerResponse.status(HttpStatus.CREATED)::bodyValue);
 
     }
@@ -67,14 +110,146 @@ public class ReviewHandler {
     public Mono<ServerResponse> getReviews(ServerRequest serverRequest) {
 
         var movieInfoId = serverRequest.queryParam("movieInfoId");
+        var movieInfoIds = serverRequest.queryParam("movieInfoIds");
+        // the fields left out aren't read from MongoDB and, being null, aren't written either
+        var fields = projection(serverRequest.queryParam("fields"));
+
+        if(movieInfoIds.isPresent()) {
+            var ids = Arrays.stream(movieInfoIds.get().split(","))
+                    .map(String::trim)
+                    // no review has a movieInfoId that isn't a number, the other ids still get theirs
+                    .filter(id -> MOVIE_INFO_ID.matcher(id).matches())
+                    .map(Long::valueOf)
+                    .collect(Collectors.toList());
+
+            var contentType = contentType(serverRequest, MediaType.APPLICATION_JSON, APPLICATION_SMILE);
+
+            // the reviews are grouped by it
+            if (!fields.isEmpty()) {
+                fields.add("movieInfoId");
+            }
+
+            // single $in query for all the movies, grouped as movieInfoId -> reviews
+            return reviewReactiveRepository.findReviewsByMovieInfoIdIn(ids, fields)
+                    .collectMultimap(Review::getMovieInfoId)
+                    .flatMap(ServerResponse.ok().contentType(contentType)::bodyValue);
+        }
 
         if(movieInfoId.isPresent()) {
-            var reviews = reviewReactiveRepository.findReviewsByMovieInfoId(Long.valueOf(movieInfoId.get())).log() ;
-            return ServerResponse.ok().body(reviews, Review.class);
+            var id = movieInfoId(movieInfoId.get());
+            // NDJSON or a Smile stream on request, a review flushed as it's read, so neither side holds the whole list
+            var contentType = contentType(serverRequest, MediaType.APPLICATION_JSON, MediaType.APPLICATION_NDJSON,
+                    APPLICATION_STREAM_SMILE, APPLICATION_SMILE);
+
+            // the ETag comes from the ids and versions alone, the reviews are only read when they have changed
+            return reviewReactiveRepository.findVersionsByMovieInfoId(id)
+                    .transform(tracer.flux("reviewVersions"))
+                    .map(review -> review.getReviewId() + ":" + review.getVersion())
+                    .collect(Collectors.joining(","))
+                    .map(versions -> DigestUtils.md5DigestAsHex(versions.getBytes(StandardCharsets.UTF_8)))
+                    .flatMap(eTag -> serverRequest.checkNotModified(eTag)
+                            .switchIfEmpty(Mono.defer(() -> ServerResponse.ok()
+                                    .contentType(contentType)
+                                    .eTag(eTag)
+                                    .varyBy(HttpHeaders.ACCEPT)
+                                    .body(reviewReactiveRepository.findReviewsByMovieInfoId(id, fields).transform(tracer.flux("reviews")),
+                                            Review.class))));
         }
 
-        var reviews = reviewReactiveRepository.findAll();
-        return ServerResponse.ok().body(reviews, Review.class);
+        var pageSize = pageSize(serverRequest.queryParam("limit"));
+        var contentType = contentType(serverRequest, MediaType.APPLICATION_JSON, APPLICATION_SMILE);
+
+        // one extra row tells whether there is a next page
+        return reviewReactiveRepository.findPage(decodeCursor(serverRequest.queryParam("cursor")), pageSize + 1, fields)
+                .collectList()
+                .flatMap(reviews -> {
+                    if (reviews.size() <= pageSize) {
+                        return ServerResponse.ok().contentType(contentType).bodyValue(reviews);
+                    }
+                    var page = reviews.subList(0, pageSize);
+                    return ServerResponse.ok()
+                            .contentType(contentType)
+                            .header(NEXT_CURSOR_HEADER, encodeCursor(page.get(pageSize - 1).getReviewId()))
+                            .bodyValue(page);
+                });
+    }
+
+    /**
+     * Functional endpoints don't negotiate the content type themselves. This is the first of the {@code producible}
+     * types the client accepts, by quality and then in the order of its {@code Accept} header, so a client that
+     * accepts anything gets the first one, JSON.
+     */
+    private static MediaType contentType(ServerRequest serverRequest, MediaType... producible) {
+        var accepted = new ArrayList<>(serverRequest.headers().accept());
+        MediaType.sortByQualityValue(accepted);
+        for (var acceptedType : accepted) {
+            for (var mediaType : producible) {
+                if (acceptedType.isCompatibleWith(mediaType)) {
+                    return mediaType;
+                }
+            }
+        }
+        return producible[0];
+    }
+
+    // a malformed id is the caller's mistake, not a failure of the service to be retried
+    private static Long movieInfoId(String movieInfoId) {
+        if (!MOVIE_INFO_ID.matcher(movieInfoId.trim()).matches()) {
+            throw new ReviewDataException("Invalid movieInfoId : " + movieInfoId);
+        }
+        return Long.valueOf(movieInfoId.trim());
+    }
+
+    private int pageSize(Optional<String> limit) {
+        if (limit.isEmpty()) {
+            return defaultLimit;
+        }
+        if (!limit.get().matches("[1-9][0-9]{0,8}")) {
+            throw new ReviewDataException("limit should be a positive integer");
+        }
+        return Math.min(Integer.parseInt(limit.get()), maxLimit);
+    }
+
+    private static Set<String> projection(Optional<String> fields) {
+        var projection = new LinkedHashSet<String>();
+        if (fields.isEmpty()) {
+            return projection;
+        }
+        for (var field : fields.get().split(",")) {
+            field = field.trim();
+            if (!FIELDS.contains(field)) {
+                throw new ReviewDataException("Unknown field : " + field);
+            }
+            projection.add(field);
+        }
+        return projection;
+    }
+
+    private static String encodeCursor(String reviewId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(reviewId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(Optional<String> cursor) {
+        try {
+            return cursor.map(value -> new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8))
+                    .orElse(null);
+        } catch (IllegalArgumentException ex) {
+            throw new ReviewDataException("Invalid cursor : " + cursor.get());
+        }
+    }
+
+    public Mono<ServerResponse> getReviewSummary(ServerRequest serverRequest) {
+
+        var movieInfoId = serverRequest.queryParam("movieInfoId")
+                .map(ReviewHandler::movieInfoId)
+                .orElseThrow(() -> new ReviewDataException("movieInfoId is required"));
+
+        var contentType = contentType(serverRequest, MediaType.APPLICATION_JSON, APPLICATION_SMILE);
+
+        // a movie without reviews has no summary document yet
+        return reviewSummaryRepository.findById(movieInfoId)
+                .defaultIfEmpty(ReviewSummary.empty(movieInfoId))
+                .flatMap(ServerResponse.ok().contentType(contentType)::bodyValue);
     }
 
     public Mono<ServerResponse> updateReview(ServerRequest serverRequest) {
@@ -82,30 +257,39 @@ public class ReviewHandler {
         var reviewId = serverRequest.pathVariable("id");
 
         return reviewReactiveRepository.findById(reviewId)
+                .transform(tracer.mono("findReview"))
                 // If the id does not have value in the db then return an exception here
                 .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for given id : "+ reviewId)))
                 // this mapping is done to the object that returns from the repository
-                .flatMap(review -> serverRequest.bodyToMono(Review.class)
+                .flatMap(review -> {
+                    // copy of the stored review, so its rating can be taken out of the summary
+                    var previous = new Review(review.getReviewId(), review.getMovieInfoId(), review.getComment(), review.getRating());
+                    previous.setSummarized(review.isSummarized());
+
+                    return serverRequest.bodyToMono(Review.class)
                         // and then get the value from the request and map the request value to the value returns from
                         // the reactive DB
                         .map(reqReview -> {
                             // this is the mapping that converts the value in DB to value from the request
                             review.setComment(reqReview.getComment());
                             review.setRating(reqReview.getRating());
+                            review.setSummarized(true);
                             return review;
                         })
                         // this transformation is done to the updated 'review' object that returns from the above map
-                        .flatMap(reviewReactiveRepository::save)
+                        .flatMap(changed -> reviewReactiveRepository.save(changed).transform(tracer.mono("saveReview")))
+                        .flatMap(updated -> reviewSummaryRepository.applyChange(updated.getMovieInfoId(), previous, updated)
+                                .transform(tracer.mono("applySummary"))
+                                .thenReturn(updated))
                         // the above flatmap returns the updated object after the save operation is completed and then
                         // returns the server response
-                        .flatMap(ServerResponse.status(HttpStatus.OK)::bodyValue))
+                        .flatMap(ServerResponse.status(HttpStatus.OK)::bodyValue);
+                });
                 /*
                 one other way to respond back with 404 is below way
                 .switchIfEmpty(ServerResponse.notFound().build()
                  */
 
-                .log();
-
     }
 
     public Mono<ServerResponse> deleteReview(ServerRequest serverRequest) {
@@ -113,14 +297,18 @@ public class ReviewHandler {
 
         var existingReview = reviewReactiveRepository.findById(reviewId);
 
-        return existingReview.flatMap(review -> reviewReactiveRepository.delete(review))
+        return existingReview.flatMap(review -> reviewReactiveRepository.delete(review)
+                        .then(reviewSummaryRepository.applyChange(review.getMovieInfoId(), review, null)))
                 .then(ServerResponse.noContent().build());
     }
 
     public Mono<ServerResponse> streamReview(ServerRequest serverRequest) {
 
+        // a reconnecting client continues after the last event it has seen
+        var lastEventId = serverRequest.headers().firstHeader("Last-Event-ID");
+
         return ServerResponse.ok()
-                .contentType(MediaType.APPLICATION_NDJSON)
-                .body(reviewSinks.asFlux(), Review.class);
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(reviewChangeStream.changes(lastEventId), new ParameterizedTypeReference<ServerSentEvent<Review>>() {});
     }
 }
@@ -0,0 +1,148 @@
+package com.reactivespring.repository;
+
+import com.mongodb.MongoServerException;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.FullDocumentBeforeChange;
+import com.mongodb.client.model.changestream.OperationType;
+import com.reactivespring.domain.Review;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Set;
+
+/**
+ * Change feed of the review collection backed by a MongoDB change stream, so every write is seen no matter
+ * which instance handled it. Each event carries its resume token as the SSE id, a client that reconnects with
+ * it as {@code Last-Event-ID} continues right after that event. Change streams need a replica set.
+ * <p>
+ * A delete event carries the id and the movieInfoId of the deleted review, the latter taken from the pre-image
+ * MongoDB keeps of it. Pre-images are enabled on the collection on startup, which needs MongoDB 6.0; on an older
+ * server delete events carry the id alone.
+ */
+@Component
+@Slf4j
+public class ReviewChangeStream {
+
+    public static final String RESET_EVENT = "reset";
+
+    // ChangeStreamFatalError, ChangeStreamHistoryLost : the token can't be resumed from anymore
+    private static final Set<Integer> HISTORY_LOST_CODES = Set.of(280, 286);
+
+    // NamespaceNotFound : the collection doesn't exist yet
+    private static final Set<Integer> NAMESPACE_NOT_FOUND_CODES = Set.of(26);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    // asking for pre-images the collection doesn't keep fails the change stream on servers before 6.0
+    private volatile boolean preImagesEnabled;
+
+    public ReviewChangeStream(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void enablePreImages() {
+        var collection = reactiveMongoTemplate.getCollectionName(Review.class);
+        var preImages = new Document("enabled", true);
+
+        reactiveMongoTemplate.executeCommand(new Document("collMod", collection).append("changeStreamPreAndPostImages", preImages))
+                .onErrorResume(ex -> hasCode(ex, NAMESPACE_NOT_FOUND_CODES),
+                        ex -> reactiveMongoTemplate.executeCommand(
+                                new Document("create", collection).append("changeStreamPreAndPostImages", preImages)))
+                .doOnNext(result -> preImagesEnabled = true)
+                .onErrorResume(ex -> {
+                    log.warn("Can't enable pre-images of {}, delete events won't carry a movieInfoId : {}",
+                            collection, ex.getMessage());
+                    return Mono.empty();
+                })
+                .block();
+    }
+
+    public Flux<ServerSentEvent<Review>> changes(String lastEventId) {
+        if (lastEventId == null) {
+            return listen(null);
+        }
+
+        return Flux.defer(() -> listen(decode(lastEventId)))
+                .onErrorResume(this::isNotResumable, ex -> {
+                    // the client missed events we can't deliver anymore, tell it to start over
+                    log.warn("Can't resume review change stream from {} : {}", lastEventId, ex.getMessage());
+                    return Flux.concat(Flux.just(ServerSentEvent.<Review>builder().event(RESET_EVENT).build()),
+                            changes(null));
+                });
+    }
+
+    private Flux<ServerSentEvent<Review>> listen(BsonDocument resumeToken) {
+        // the driver's own change stream, Spring's options have no way to ask for pre-images
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(Review.class))
+                .flatMapMany(collection -> {
+                    var changes = collection.watch().fullDocument(FullDocument.UPDATE_LOOKUP);
+                    if (preImagesEnabled) {
+                        changes = changes.fullDocumentBeforeChange(FullDocumentBeforeChange.WHEN_AVAILABLE);
+                    }
+                    return resumeToken == null ? changes : changes.resumeAfter(resumeToken);
+                })
+                .map(this::toServerSentEvent);
+    }
+
+    private ServerSentEvent<Review> toServerSentEvent(ChangeStreamDocument<Document> event) {
+        var review = read(event.getFullDocument());
+        if (event.getOperationType() == OperationType.DELETE) {
+            // the key of a deleted document, and its movie when MongoDB kept a pre-image of it
+            var deleted = read(event.getFullDocumentBeforeChange());
+            review = new Review(toId(event.getDocumentKey().get("_id")),
+                    deleted == null ? null : deleted.getMovieInfoId(), null, null);
+        }
+
+        return ServerSentEvent.builder(review)
+                .id(encode(event.getResumeToken()))
+                .event(event.getOperationType().getValue())
+                .build();
+    }
+
+    private Review read(Document document) {
+        return document == null ? null : reactiveMongoTemplate.getConverter().read(Review.class, document);
+    }
+
+    private boolean isNotResumable(Throwable ex) {
+        return ex instanceof IllegalArgumentException || hasCode(ex, HISTORY_LOST_CODES);
+    }
+
+    private static boolean hasCode(Throwable ex, Set<Integer> codes) {
+        for (var cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoServerException && codes.contains(((MongoServerException) cause).getCode())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String toId(BsonValue id) {
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+    }
+
+    private static String encode(BsonValue resumeToken) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(resumeToken.asDocument().toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static BsonDocument decode(String lastEventId) {
+        try {
+            return BsonDocument.parse(new String(Base64.getUrlDecoder().decode(lastEventId), StandardCharsets.UTF_8));
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Invalid Last-Event-ID : " + lastEventId, ex);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+public interface ReviewRepositoryCustom {
+
+    /**
+     * Keyset page in {@code _id} order : at most {@code limit} reviews with an id after {@code afterId},
+     * or from the start when it is null. Only the given {@code fields} and the id are read, all of them when there
+     * are none.
+     */
+    Flux<Review> findPage(String afterId, int limit, Collection<String> fields);
+
+    /**
+     * The reviews of a movie in {@code _id} order with only the given {@code fields} and the id, all of them when
+     * there are none.
+     */
+    Flux<Review> findReviewsByMovieInfoId(Long movieInfoId, Collection<String> fields);
+
+    /**
+     * The reviews of the movies with only the given {@code fields} and the id, all of them when there are none.
+     */
+    Flux<Review> findReviewsByMovieInfoIdIn(Collection<Long> movieInfoIds, Collection<String> fields);
+
+    /**
+     * The reviews of a movie in {@code _id} order with nothing but their id and version.
+     */
+    Flux<Review> findVersionsByMovieInfoId(Long movieInfoId);
+
+    /**
+     * Sets version 0 on reviews saved before they were versioned, and returns how many there were.
+     */
+    Mono<Long> initVersions();
+}
@@ -0,0 +1,97 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.deadline.Deadline;
+import com.reactivespring.domain.Review;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+
+public class ReviewRepositoryImpl implements ReviewRepositoryCustom {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public ReviewRepositoryImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Flux<Review> findPage(String afterId, int limit, Collection<String> fields) {
+        var query = new Query(after(afterId))
+                .with(Sort.by(Sort.Direction.ASC, "_id"))
+                .limit(limit);
+        // MongoDB returns _id whether it's asked for or not, the cursor of the next page is made from it
+        fields.forEach(query.fields()::include);
+
+        return find(query);
+    }
+
+    @Override
+    public Flux<Review> findReviewsByMovieInfoId(Long movieInfoId, Collection<String> fields) {
+        var query = new Query(Criteria.where("movieInfoId").is(movieInfoId))
+                .with(Sort.by(Sort.Direction.ASC, "_id"));
+        fields.forEach(query.fields()::include);
+
+        return find(query);
+    }
+
+    @Override
+    public Flux<Review> findReviewsByMovieInfoIdIn(Collection<Long> movieInfoIds, Collection<String> fields) {
+        var query = new Query(Criteria.where("movieInfoId").in(movieInfoIds));
+        fields.forEach(query.fields()::include);
+
+        return find(query);
+    }
+
+    @Override
+    public Flux<Review> findVersionsByMovieInfoId(Long movieInfoId) {
+        var query = new Query(Criteria.where("movieInfoId").is(movieInfoId))
+                .with(Sort.by(Sort.Direction.ASC, "_id"));
+        query.fields().include("_id", "version");
+
+        return find(query);
+    }
+
+    @Override
+    public Mono<Long> initVersions() {
+        return reactiveMongoTemplate.updateMulti(new Query(Criteria.where("version").exists(false)),
+                        Update.update("version", 0L), Review.class)
+                .map(UpdateResult::getModifiedCount);
+    }
+
+    private Flux<Review> find(Query query) {
+        // MongoDB gives up on the query itself once the caller's deadline has passed
+        return Flux.deferContextual(context -> {
+            Deadline.from(context).ifPresent(deadline -> query.maxTime(atLeastOneMilli(deadline.remaining())));
+            return reactiveMongoTemplate.find(query, Review.class);
+        });
+    }
+
+    private static Criteria after(String afterId) {
+        if (afterId == null) {
+            return new Criteria();
+        }
+        if (ObjectId.isValid(afterId)) {
+            return Criteria.where("_id").gt(new ObjectId(afterId));
+        }
+        // ids given on insert stay strings, generated ones are ObjectIds which sort after every string,
+        // and $gt on a string value only ever matches strings
+        return new Criteria().orOperator(
+                Criteria.where("_id").gt(afterId),
+                Criteria.where("_id").type(JsonSchemaObject.Type.objectIdType()));
+    }
+
+    private static Duration atLeastOneMilli(Duration remaining) {
+        // a max time of 0 would mean no limit at all
+        return remaining.toMillis() < 1 ? Duration.ofMillis(1) : remaining;
+    }
+}
@@ -0,0 +1,55 @@
+package com.reactivespring.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Counts the reviews saved before summaries were kept in the summaries of their movies, which would otherwise be
+ * reported as having fewer reviews. This is a one-off migration: once it has completed a marker document in the
+ * migrations collection makes later startups skip the pass over the review collection. Review writes may run
+ * alongside it, on this instance or another one, see {@link ReviewSummaryRepositoryCustom#initSummaries()} for why
+ * that counts every review once. A startup that dies half way runs it again, which picks up where it stopped.
+ */
+@Component
+@Slf4j
+public class ReviewSummaryInitializer {
+
+    private static final String MIGRATIONS = "migrations";
+    private static final String MIGRATION_ID = "reviewSummaries";
+
+    private final ReviewSummaryRepository reviewSummaryRepository;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public ReviewSummaryInitializer(ReviewSummaryRepository reviewSummaryRepository,
+                                    ReactiveMongoTemplate reactiveMongoTemplate,
+                                    ApplicationEventPublisher eventPublisher) {
+        this.reviewSummaryRepository = reviewSummaryRepository;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void initSummaries() {
+        var migration = new Query(Criteria.where("_id").is(MIGRATION_ID));
+        if (Boolean.TRUE.equals(reactiveMongoTemplate.exists(migration, MIGRATIONS).block())) {
+            return;
+        }
+
+        // Boot reports the application ready once every listener of ApplicationStartedEvent has returned
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        log.info("Counted {} reviews in the summaries of their movies", reviewSummaryRepository.initSummaries().block());
+        reactiveMongoTemplate.upsert(migration, Update.update("completedAt", Instant.now()), MIGRATIONS).block();
+    }
+}
@@ -0,0 +1,22 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import reactor.core.publisher.Mono;
+
+public interface ReviewSummaryRepositoryCustom {
+
+    /**
+     * Moves the summary of {@code movieInfoId} from counting {@code removed} to counting {@code added}, either
+     * may be null for an insert or a delete. A {@code removed} review that isn't {@link Review#isSummarized()
+     * summarized} was never counted and is left out. Applied as one atomic upsert.
+     */
+    Mono<Void> applyChange(Long movieInfoId, Review removed, Review added);
+
+    /**
+     * Counts the reviews that aren't summarized yet, i.e. those saved before summaries were kept, in the summaries
+     * of their movies. Each one is marked summarized as it is counted, with a conditional update, so running this
+     * again or on several instances at once counts no review twice, and an update or delete of a review that read it
+     * unmarked fails with a conflict. Returns the number of reviews counted.
+     */
+    Mono<Long> initSummaries();
+}
@@ -0,0 +1,85 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ReviewSummaryRepositoryImpl implements ReviewSummaryRepositoryCustom {
+
+    private static final int INIT_CONCURRENCY = 16;
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public ReviewSummaryRepositoryImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Mono<Void> applyChange(Long movieInfoId, Review removed, Review added) {
+        var counters = new LinkedHashMap<String, Long>();
+        var ratingSum = 0.0;
+        // a review that was never counted has nothing to take out
+        if (removed != null && removed.isSummarized()) {
+            ratingSum += count(counters, removed, -1);
+        }
+        if (added != null) {
+            ratingSum += count(counters, added, 1);
+        }
+
+        var update = new Update();
+        counters.forEach((field, delta) -> {
+            if (delta != 0) {
+                update.inc(field, delta);
+            }
+        });
+        if (ratingSum != 0) {
+            update.inc("ratingSum", ratingSum);
+        }
+        if (update.getUpdateObject().isEmpty()) {
+            // e.g. only the comment changed
+            return Mono.empty();
+        }
+
+        return reactiveMongoTemplate.upsert(new Query(Criteria.where("_id").is(movieInfoId)), update, ReviewSummary.class)
+                .then();
+    }
+
+    @Override
+    public Mono<Long> initSummaries() {
+        var query = new Query();
+        query.fields().include("movieInfoId").include("rating").include("summarized");
+
+        // one pass over the whole collection, there is no index on a flag that is only ever unset on old reviews
+        return reactiveMongoTemplate.find(query, Review.class)
+                .filter(review -> !review.isSummarized())
+                .flatMap(review -> markSummarized(review.getReviewId())
+                        .flatMap(marked -> applyChange(marked.getMovieInfoId(), null, marked).thenReturn(marked)), INIT_CONCURRENCY)
+                .count();
+    }
+
+    // the review as it was before it got marked, empty if it was marked in the meantime; the version is bumped so
+    // that an update or delete of the review that read it unmarked fails instead of taking it out of the summary
+    private Mono<Review> markSummarized(String reviewId) {
+        return reactiveMongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(reviewId).and("summarized").ne(true)),
+                new Update().set("summarized", true).inc("version", 1),
+                Review.class);
+    }
+
+    private static double count(Map<String, Long> counters, Review review, long sign) {
+        counters.merge("count", sign, Long::sum);
+        if (review.getRating() == null) {
+            return 0;
+        }
+        counters.merge("ratingCount", sign, Long::sum);
+        counters.merge("histogram." + (long) Math.floor(review.getRating()), sign, Long::sum);
+        return sign * review.getRating();
+    }
+}
@@ -0,0 +1,37 @@
+package com.reactivespring.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gives reviews saved before they were versioned version 0 on startup. Without a version a review would be taken
+ * for a new one on its next save and inserted again. The server is already listening by then, so readiness is held
+ * at {@link ReadinessState#REFUSING_TRAFFIC} until this is done and traffic routed by
+ * {@code /actuator/health/readiness} only arrives afterwards. A request sent straight to the port can still see a
+ * review without one.
+ */
+@Component
+@Slf4j
+public class ReviewVersionInitializer {
+
+    private final ReviewReactiveRepository reviewReactiveRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public ReviewVersionInitializer(ReviewReactiveRepository reviewReactiveRepository,
+                                    ApplicationEventPublisher eventPublisher) {
+        this.reviewReactiveRepository = reviewReactiveRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void initVersions() {
+        // Boot reports the application ready once every listener of ApplicationStartedEvent has returned
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        log.info("Versioned {} reviews", reviewReactiveRepository.initVersions().block());
+    }
+}
@@ -23,7 +23,8 @@ public class ReviewRouter {
                             .GET("", reviewHandler::getReviews)
                             .PUT("/{id}", reviewHandler::updateReview)
                             .DELETE("/{id}",reviewHandler::deleteReview)
-                            .GET("/stream", reviewHandler::streamReview);
+                            .GET("/stream", reviewHandler::streamReview)
+                            .GET("/summary", reviewHandler::getReviewSummary);
                 })
                 .GET("/v1/helloworld",(request ->  ServerResponse.ok().bodyValue("hello world")))
                 .build();
@@ -0,0 +1,68 @@
+package com.reactivespring;
+
+import org.bson.Document;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.stream.Collectors;
+
+/**
+ * Fails a test in which MongoDB had to scan a whole collection to find the documents matching the filter of a
+ * query, i.e. a query no index serves. Queries without a filter, like findAll, scan by definition and pass. The
+ * operations of the test are taken from the database profiler, which is on for the duration of the test.
+ */
+public class CollectionScanGuard implements BeforeEachCallback, AfterEachCallback {
+
+    private static final String PROFILE = "system.profile";
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        var template = template(context);
+        // the profile of the previous test goes, it can only be dropped while the profiler is off
+        template.executeCommand("{ profile: 0 }")
+                .then(template.dropCollection(PROFILE))
+                .then(template.executeCommand("{ profile: 2 }"))
+                .block();
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        var template = template(context);
+        var scans = template.executeCommand("{ profile: 0 }")
+                .thenMany(template.find(new Query(Criteria.where("planSummary").is("COLLSCAN")), Document.class, PROFILE))
+                .filter(CollectionScanGuard::isFilteredRead)
+                .map(operation -> operation.getString("ns") + " " + command(operation).toJson())
+                .collect(Collectors.toList())
+                .block();
+
+        if (!scans.isEmpty()) {
+            throw new AssertionError("Queries scanned a whole collection, an index is missing: " + scans);
+        }
+    }
+
+    private static ReactiveMongoTemplate template(ExtensionContext context) {
+        return SpringExtension.getApplicationContext(context).getBean(ReactiveMongoTemplate.class);
+    }
+
+    private static boolean isFilteredRead(Document operation) {
+        var command = command(operation);
+        Object filter = null;
+        if (command.containsKey("find")) {
+            filter = command.get("filter");
+        } else if (command.containsKey("count")) {
+            filter = command.get("query");
+        }
+        return filter instanceof Document && !((Document) filter).isEmpty();
+    }
+
+    // servers before 3.6 profile the command as query
+    private static Document command(Document operation) {
+        var command = operation.get("command", Document.class);
+        return command != null ? command : operation.get("query", new Document());
+    }
+}
@@ -1,11 +1,15 @@
 package com.reactivespring.routes;
 
+import com.reactivespring.CollectionScanGuard;
 import com.reactivespring.domain.Review;
+import com.reactivespring.handler.ReviewHandler;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewSummaryRepository;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -21,6 +25,7 @@ import static org.junit.jupiter.api.Assertions.fail;
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
 @AutoConfigureWebTestClient
+@ExtendWith(CollectionScanGuard.class)
 public class ReviewsIntgTest {
 
     @Autowired
@@ -29,6 +34,9 @@ public class ReviewsIntgTest {
     @Autowired
     ReviewReactiveRepository reviewReactiveRepository;
 
+    @Autowired
+    ReviewSummaryRepository reviewSummaryRepository;
+
     private static final String REVIEWS_INFO = "/v1/reviews";
 
     @BeforeEach
@@ -45,6 +53,7 @@ public class ReviewsIntgTest {
     @AfterEach
     void tearDown() {
         reviewReactiveRepository.deleteAll().block();
+        reviewSummaryRepository.deleteAll().block();
     }
 
     @Test
@@ -78,6 +87,31 @@ public class ReviewsIntgTest {
                 .hasSize(3);
     }
 
+    @Test
+    void getReviews_paged() {
+
+        // "test" is stored as a string id, the other two get ObjectIds which sort after it
+        var firstPage = webTestClient.get()
+                .uri(REVIEWS_INFO + "?limit=2")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .hasSize(2)
+                .returnResult();
+
+        assertEquals("test", firstPage.getResponseBody().get(0).getReviewId());
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "?limit=2&cursor={cursor}",
+                        firstPage.getResponseHeaders().getFirst(ReviewHandler.NEXT_CURSOR_HEADER))
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .hasSize(1);
+    }
+
     @Test
     void updateTest() {
 
@@ -99,6 +133,104 @@ public class ReviewsIntgTest {
                 });
     }
 
+    @Test
+    void reviewSummaryTest() {
+
+        var first = webTestClient.post()
+                .uri(REVIEWS_INFO)
+                .bodyValue(new Review(null, 10L, "Elah movie", 9.0))
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectBody(Review.class)
+                .returnResult()
+                .getResponseBody();
+
+        webTestClient.post()
+                .uri(REVIEWS_INFO)
+                .bodyValue(new Review(null, 10L, "Elah movie", 7.0))
+                .exchange()
+                .expectStatus()
+                .isCreated();
+
+        webTestClient.put()
+                .uri(REVIEWS_INFO + "/{id}", first.getReviewId())
+                .bodyValue(new Review(null, 10L, "not so greate movie", 5.0))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "/summary?movieInfoId=10")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.averageRating").isEqualTo(6.0)
+                .jsonPath("$.histogram.5").isEqualTo(1)
+                .jsonPath("$.histogram.7").isEqualTo(1)
+                .jsonPath("$.histogram.9").isEqualTo(0);
+
+        webTestClient.delete()
+                .uri(REVIEWS_INFO + "/{id}", first.getReviewId())
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "/summary?movieInfoId=10")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(1)
+                .jsonPath("$.averageRating").isEqualTo(7.0);
+    }
+
+    @Test
+    void initSummariesTest() {
+
+        // saved around the handler, as reviews were before summaries were kept
+        reviewReactiveRepository.saveAll(List.of(new Review(null, 1L, "Elah movie", 6.5),
+                new Review(null, 1L, "no rating", null))).blockLast();
+
+        // those of setUp included
+        assertEquals(5, reviewSummaryRepository.initSummaries().block());
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "/summary?movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(3)
+                .jsonPath("$.ratingCount").isEqualTo(2)
+                .jsonPath("$.averageRating").isEqualTo(7.75)
+                .jsonPath("$.histogram.6").isEqualTo(1)
+                .jsonPath("$.histogram.9").isEqualTo(1);
+
+        // counted reviews are marked, neither running it again nor updating one through the handler counts it twice
+        assertEquals(0, reviewSummaryRepository.initSummaries().block());
+        var counted = reviewReactiveRepository.findAll().filter(review -> review.getMovieInfoId() == 1L).blockFirst();
+
+        webTestClient.put()
+                .uri(REVIEWS_INFO + "/{id}", counted.getReviewId())
+                .bodyValue(new Review(null, 1L, "Elah movie", counted.getRating()))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "/summary?movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(3)
+                .jsonPath("$.ratingCount").isEqualTo(2);
+    }
+
     @Test
     void deleteTest() {
 
@@ -123,4 +255,21 @@ public class ReviewsIntgTest {
                 .expectBodyList(Review.class)
                 .hasSize(1);
     }
+
+    @Test
+    void getByMovieInfoIdsTest() {
+        var uri = UriComponentsBuilder.fromUriString(REVIEWS_INFO)
+                .queryParam("movieInfoIds","1,3")
+                .buildAndExpand().toUri();
+
+        webTestClient.get()
+                .uri(uri)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.1.length()").isEqualTo(1)
+                .jsonPath("$.3.length()").isEqualTo(1)
+                .jsonPath("$.2").doesNotExist();
+    }
 }
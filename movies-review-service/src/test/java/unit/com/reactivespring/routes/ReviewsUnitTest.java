@@ -1,35 +1,63 @@
 package com.reactivespring.routes;
 
+import com.reactivespring.deadline.Deadline;
+import com.reactivespring.deadline.DeadlineWebFilter;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
 import com.reactivespring.exceptionhandler.ExceptionHandler;
 import com.reactivespring.handler.ReviewHandler;
+import com.reactivespring.repository.ReviewChangeStream;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewSummaryRepository;
 import com.reactivespring.router.ReviewRouter;
+import com.reactivespring.trace.Tracer;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest
-@ContextConfiguration( classes = {ReviewRouter.class, ReviewHandler.class, ExceptionHandler.class})
+@ContextConfiguration( classes = {ReviewRouter.class, ReviewHandler.class, ExceptionHandler.class, DeadlineWebFilter.class, Tracer.class})
 @AutoConfigureWebTestClient
 public class ReviewsUnitTest {
 
     @MockBean
     private ReviewReactiveRepository reviewReactiveRepository;
 
+    @MockBean
+    private ReviewSummaryRepository reviewSummaryRepository;
+
+    @MockBean
+    private ReviewChangeStream reviewChangeStream;
+
     @Autowired
     WebTestClient webTestClient;
 
@@ -41,6 +69,7 @@ public class ReviewsUnitTest {
         var review = new Review("abcd", 1L,"Elah movie", 9.0);
 
         when(reviewReactiveRepository.save(isA(Review.class))).thenReturn(Mono.just(review));
+        when(reviewSummaryRepository.applyChange(1L, null, review)).thenReturn(Mono.empty());
 
         webTestClient.post()
                 .uri(REVIEWS_INFO)
@@ -56,6 +85,42 @@ public class ReviewsUnitTest {
                     assertEquals("abcd",reviewInfo.getReviewId());
                 });
 
+        // saved as counted in the summary, so the summary backfill leaves it alone
+        verify(reviewReactiveRepository).save(argThat(Review::isSummarized));
+    }
+
+    @Test
+    void addReviewTest_conflict() {
+
+        var review = new Review("abcd", 1L,"Elah movie", 9.0);
+
+        when(reviewReactiveRepository.save(isA(Review.class)))
+                .thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key error")));
+
+        webTestClient.post()
+                .uri(REVIEWS_INFO)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    @Test
+    void updateReviewTest_conflict() {
+
+        var review = new Review("test", 1L,"good movie", 9.0, 1L);
+
+        when(reviewReactiveRepository.findById("test")).thenReturn(Mono.just(review));
+        // updated by another request after this one read it
+        when(reviewReactiveRepository.save(isA(Review.class)))
+                .thenReturn(Mono.error(new OptimisticLockingFailureException("Version 1 is outdated")));
+
+        webTestClient.put()
+                .uri(REVIEWS_INFO+"/{id}", "test")
+                .bodyValue(review)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
     }
 
     @Test
@@ -79,17 +144,306 @@ public class ReviewsUnitTest {
 
         var reviews = List.of(new Review("abcd", 1L,"Elah movie", 9.0));
 
-        when(reviewReactiveRepository.findAll()).thenReturn(Flux.fromIterable(reviews));
+        when(reviewReactiveRepository.findPage(null, 101, Set.of())).thenReturn(Flux.fromIterable(reviews));
 
         webTestClient.get()
                 .uri(REVIEWS_INFO)
                 .exchange()
                 .expectStatus()
                 .is2xxSuccessful()
+                .expectHeader()
+                .doesNotExist(ReviewHandler.NEXT_CURSOR_HEADER)
                 .expectBodyList(Review.class)
                 .hasSize(1);
     }
 
+    @Test
+    void allReviewTest_paged() {
+
+        var reviews = List.of(new Review("abcd", 1L,"Elah movie", 9.0),
+                new Review("efgh", 2L,"Elah movie 2", 8.0));
+
+        when(reviewReactiveRepository.findPage(null, 2, Set.of())).thenReturn(Flux.fromIterable(reviews));
+        when(reviewReactiveRepository.findPage("abcd", 2, Set.of())).thenReturn(Flux.just(reviews.get(1)));
+
+        var nextCursor = webTestClient.get()
+                .uri(REVIEWS_INFO + "?limit=1")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .hasSize(1)
+                .returnResult()
+                .getResponseHeaders()
+                .getFirst(ReviewHandler.NEXT_CURSOR_HEADER);
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "?limit=1&cursor={cursor}", nextCursor)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .doesNotExist(ReviewHandler.NEXT_CURSOR_HEADER)
+                .expectBodyList(Review.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void allReviewTest_limit() {
+
+        when(reviewReactiveRepository.findPage(null, 501, Set.of())).thenReturn(Flux.empty());
+
+        // capped at reviews.page.maxLimit
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "?limit=100000")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful();
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "?limit=-1")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void reviewsByMovieInfoIdTest_ndjson() {
+
+        var reviews = List.of(new Review("abcd", 1L,"Elah movie", 9.0),
+                new Review("efgh", 1L,"Elah movie again", 8.0));
+
+        when(reviewReactiveRepository.findReviewsByMovieInfoId(1L, Set.of())).thenReturn(Flux.fromIterable(reviews));
+        when(reviewReactiveRepository.findVersionsByMovieInfoId(1L)).thenReturn(Flux.fromIterable(reviews));
+
+        var body = webTestClient.get()
+                .uri(REVIEWS_INFO+"?movieInfoId=1")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .returnResult(Review.class)
+                .getResponseBody();
+
+        StepVerifier.create(body)
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
+    @Test
+    void reviewsByMovieInfoIdTest_smile() {
+
+        var reviews = List.of(new Review("abcd", 1L,"Elah movie", 9.0),
+                new Review("efgh", 1L,"Elah movie again", 8.0));
+
+        when(reviewReactiveRepository.findReviewsByMovieInfoId(1L, Set.of())).thenReturn(Flux.fromIterable(reviews));
+        when(reviewReactiveRepository.findVersionsByMovieInfoId(1L)).thenReturn(Flux.fromIterable(reviews));
+
+        // as asked for by movies-service
+        var body = webTestClient.get()
+                .uri(REVIEWS_INFO+"?movieInfoId=1")
+                .header(HttpHeaders.ACCEPT, "application/stream+x-jackson-smile, application/x-ndjson, application/x-jackson-smile, application/json")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .contentType(ReviewHandler.APPLICATION_STREAM_SMILE)
+                .returnResult(Review.class)
+                .getResponseBody();
+
+        StepVerifier.create(body)
+                .expectNextMatches(review -> review.getComment().equals("Elah movie"))
+                .expectNextMatches(review -> review.getComment().equals("Elah movie again"))
+                .verifyComplete();
+
+        // everyone else keeps getting JSON
+        webTestClient.get()
+                .uri(REVIEWS_INFO+"?movieInfoId=1")
+                .header(HttpHeaders.ACCEPT, "*/*")
+                .exchange()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_JSON);
+    }
+
+    @Test
+    void reviewsByMovieInfoIdTest_notModified() {
+
+        var reviews = List.of(new Review("abcd", 1L,"Elah movie", 9.0, 0L),
+                new Review("efgh", 1L,"Elah movie again", 8.0, 2L));
+
+        when(reviewReactiveRepository.findReviewsByMovieInfoId(1L, Set.of())).thenReturn(Flux.fromIterable(reviews));
+        when(reviewReactiveRepository.findVersionsByMovieInfoId(1L))
+                .thenReturn(Flux.fromIterable(reviews))
+                .thenReturn(Flux.fromIterable(reviews))
+                // one of them updated since
+                .thenReturn(Flux.just(new Review("abcd", 1L, null, null, 0L), new Review("efgh", 1L, null, null, 3L)));
+
+        var eTag = webTestClient.get()
+                .uri(REVIEWS_INFO+"?movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Review.class)
+                .getResponseHeaders()
+                .getETag();
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO+"?movieInfoId=1")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectBody()
+                .isEmpty();
+
+        // the reviews themselves were only read for the first request
+        verify(reviewReactiveRepository, times(1)).findReviewsByMovieInfoId(1L, Set.of());
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO+"?movieInfoId=1")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .value(HttpHeaders.ETAG, value -> assertNotEquals(eTag, value));
+    }
+
+    @Test
+    void reviewSummaryTest_smile() {
+
+        var summary = new ReviewSummary(1L, 2, 2, 17.0, new TreeMap<>(Map.of("8", 1L, "9", 1L)));
+
+        when(reviewSummaryRepository.findById(1L)).thenReturn(Mono.just(summary));
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "/summary?movieInfoId=1")
+                .header(HttpHeaders.ACCEPT, "application/x-jackson-smile, application/json")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .contentType(ReviewHandler.APPLICATION_SMILE)
+                .expectBody(ReviewSummary.class)
+                .consumeWith(result -> {
+                    assertEquals(2L, result.getResponseBody().getCount());
+                    assertEquals(1L, result.getResponseBody().getHistogram().get("9"));
+                });
+    }
+
+    @Test
+    void reviewsByMovieInfoIdsTest() {
+
+        var reviews = List.of(new Review("abcd", 1L,"Elah movie", 9.0),
+                new Review("efgh", 1L,"Elah movie again", 8.0),
+                new Review("ijkl", 2L,"Elah movie 2", 7.0));
+
+        when(reviewReactiveRepository.findReviewsByMovieInfoIdIn(List.of(1L, 2L), Set.of())).thenReturn(Flux.fromIterable(reviews));
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO+"?movieInfoIds={ids}", "1,2")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.1.length()").isEqualTo(2)
+                .jsonPath("$.2.length()").isEqualTo(1);
+    }
+
+    @Test
+    void reviewsByMovieInfoIdsTest_malformedId() {
+
+        when(reviewReactiveRepository.findReviewsByMovieInfoIdIn(List.of(1L), Set.of()))
+                .thenReturn(Flux.just(new Review("abcd", 1L,"Elah movie", 9.0)));
+
+        // the other ids still get their reviews
+        webTestClient.get()
+                .uri(REVIEWS_INFO+"?movieInfoIds={ids}", "1,abc,99999999999999999999")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.1.length()").isEqualTo(1);
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO+"?movieInfoId=abc")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "/summary?movieInfoId=abc")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void reviewsTest_fields() {
+
+        when(reviewReactiveRepository.findPage(null, 101, Set.of("rating")))
+                .thenReturn(Flux.just(new Review("abcd", null, null, 9.0)));
+        when(reviewReactiveRepository.findVersionsByMovieInfoId(1L)).thenReturn(Flux.just(new Review("abcd", 1L, null, null, 0L)));
+        when(reviewReactiveRepository.findReviewsByMovieInfoId(1L, Set.of("rating")))
+                .thenReturn(Flux.just(new Review("abcd", null, null, 9.0)));
+        // the reviews are grouped by movieInfoId, so it is read even when not asked for
+        when(reviewReactiveRepository.findReviewsByMovieInfoIdIn(List.of(1L, 2L), Set.of("rating", "movieInfoId")))
+                .thenReturn(Flux.just(new Review("abcd", 1L, null, 9.0)));
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "?fields=rating")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$[0].reviewId").isEqualTo("abcd")
+                .jsonPath("$[0].rating").isEqualTo(9.0)
+                .jsonPath("$[0].comment").doesNotHaveJsonPath()
+                .jsonPath("$[0].movieInfoId").doesNotHaveJsonPath();
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "?movieInfoId=1&fields=rating")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$[0].rating").isEqualTo(9.0)
+                .jsonPath("$[0].comment").doesNotHaveJsonPath();
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "?movieInfoIds={ids}&fields=rating", "1,2")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.1[0].rating").isEqualTo(9.0)
+                .jsonPath("$.1[0].comment").doesNotHaveJsonPath();
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "?fields=rating,author")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void reviewsByMovieInfoIdsTest_deadlineExceeded() {
+
+        var reviews = List.of(new Review("abcd", 1L,"Elah movie", 9.0));
+
+        when(reviewReactiveRepository.findReviewsByMovieInfoIdIn(List.of(1L, 2L), Set.of()))
+                .thenReturn(Flux.fromIterable(reviews).delayElements(Duration.ofSeconds(2)));
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO+"?movieInfoIds={ids}", "1,2")
+                .header(Deadline.TIMEOUT_HEADER, "200")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(504);
+    }
+
     @Test
     void updateReviewTest() {
 
@@ -98,6 +452,7 @@ public class ReviewsUnitTest {
 
         when(reviewReactiveRepository.findById(isA(String.class))).thenReturn(Mono.just(reviewBeforeUpdate));
         when(reviewReactiveRepository.save(isA(Review.class))).thenReturn(Mono.just(updatedReview));
+        when(reviewSummaryRepository.applyChange(isA(Long.class), isA(Review.class), isA(Review.class))).thenReturn(Mono.empty());
 
         webTestClient.put()
                 .uri(REVIEWS_INFO+"/{id}", "test")
@@ -134,13 +489,83 @@ public class ReviewsUnitTest {
     @Test
     void deleteTest() {
 
-        when(reviewReactiveRepository.findById(isA(String.class))).thenReturn(Mono.just(new Review()));
+        var review = new Review("test", 1L, "Elah movie", 9.0);
+
+        when(reviewReactiveRepository.findById(isA(String.class))).thenReturn(Mono.just(review));
         when(reviewReactiveRepository.delete(isA(Review.class))).thenReturn(Mono.empty());
+        when(reviewSummaryRepository.applyChange(1L, review, null)).thenReturn(Mono.empty());
 
         webTestClient.delete()
                 .uri(REVIEWS_INFO+"/{id}","test")
                 .exchange()
                 .expectStatus()
                 .isNoContent();
+
+        Mockito.verify(reviewSummaryRepository).applyChange(1L, review, null);
+    }
+
+    @Test
+    void reviewSummaryTest() {
+
+        var summary = new ReviewSummary(1L, 2, 2, 17.0, new TreeMap<>(Map.of("8", 1L, "9", 1L)));
+
+        when(reviewSummaryRepository.findById(1L)).thenReturn(Mono.just(summary));
+        when(reviewSummaryRepository.findById(2L)).thenReturn(Mono.empty());
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "/summary?movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.averageRating").isEqualTo(8.5)
+                .jsonPath("$.histogram.9").isEqualTo(1);
+
+        // no reviews yet
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "/summary?movieInfoId=2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(0)
+                .jsonPath("$.averageRating").doesNotExist();
+
+        webTestClient.get()
+                .uri(REVIEWS_INFO + "/summary")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void streamReviewTest() {
+
+        var event = ServerSentEvent.builder(new Review("abcd", 1L, "Elah movie", 9.0))
+                .id("token-2")
+                .event("insert")
+                .build();
+
+        when(reviewChangeStream.changes("token-1")).thenReturn(Flux.just(event));
+
+        var stream = webTestClient.get()
+                .uri(REVIEWS_INFO + "/stream")
+                .header("Last-Event-ID", "token-1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<Review>>() {})
+                .getResponseBody();
+
+        StepVerifier.create(stream)
+                .assertNext(sse -> {
+                    assertEquals("token-2", sse.id());
+                    assertEquals("insert", sse.event());
+                    assertEquals("abcd", sse.data().getReviewId());
+                })
+                .verifyComplete();
     }
 }
@@ -0,0 +1,117 @@
+package com.reactivespring.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.Review;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Encode and decode throughput of JSON and Smile, through the same Jackson codecs WebFlux uses on both ends of a
+ * call: a {@link MovieInfo} as answered by movies-info-service and the reviews of a movie as streamed by
+ * movies-review-service. The bytes each one takes on the wire are printed as its trial starts. Run with
+ * {@code ./gradlew :movies-service:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    private static final MimeType SMILE = MimeType.valueOf("application/x-jackson-smile");
+    private static final MimeType STREAM_SMILE = MimeType.valueOf("application/stream+x-jackson-smile");
+
+    @Param({"json", "smile"})
+    public String format;
+
+    // a single movie info, or the 100 reviews of a movie as a stream
+    @Param({"movieInfo", "reviews"})
+    public String payload;
+
+    private final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+
+    private Encoder<Object> encoder;
+    private Decoder<Object> decoder;
+    private MimeType mimeType;
+    private ResolvableType elementType;
+    private List<?> values;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        if (format.equals("json")) {
+            var mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+            encoder = new Jackson2JsonEncoder(mapper);
+            decoder = new Jackson2JsonDecoder(mapper);
+        } else {
+            var mapper = new ObjectMapper(new SmileFactory()).registerModule(new JavaTimeModule());
+            encoder = new Jackson2SmileEncoder(mapper);
+            decoder = new Jackson2SmileDecoder(mapper);
+        }
+
+        if (payload.equals("movieInfo")) {
+            mimeType = format.equals("json") ? MediaType.APPLICATION_JSON : SMILE;
+            elementType = ResolvableType.forClass(MovieInfo.class);
+            values = List.of(new MovieInfo("62eaa2a5ab9c0b4f4dcc6bcd", "Batman Begins", 2005,
+                    List.of("Christian Bale", "Michael Cane", "Liam Neeson"), LocalDate.parse("2005-06-15")));
+        } else {
+            mimeType = format.equals("json") ? MediaType.APPLICATION_NDJSON : STREAM_SMILE;
+            elementType = ResolvableType.forClass(Review.class);
+            values = IntStream.range(0, 100)
+                    .mapToObj(i -> new Review("62eaa2a5ab9c0b4f4dcc6c" + i, 1L, "Review number " + i + " of Batman Begins", 7.5))
+                    .collect(Collectors.toList());
+        }
+
+        bytes = encode();
+        System.out.printf("%n%s %s bytes=%d%n", payload, format, bytes.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        var joined = DataBufferUtils.join(encoder.encode(Flux.fromIterable(values), bufferFactory, elementType,
+                mimeType, Map.of())).block();
+        var encoded = new byte[joined.readableByteCount()];
+        joined.read(encoded);
+        DataBufferUtils.release(joined);
+        return encoded;
+    }
+
+    @Benchmark
+    public List<Object> decode() {
+        return decoder.decode(Flux.just(bufferFactory.wrap(bytes)), elementType, mimeType, Map.of())
+                .collectList()
+                .block();
+    }
+}
@@ -0,0 +1,137 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.Review;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the movieInfos/stream and reviews/stream feeds open and evicts cached entries by id as change
+ * events arrive. Every (re)connect to the movie info feed starts by clearing the cache, since events published
+ * while disconnected are not delivered again. The reviews feed is resumable, so the reviews cache is only
+ * cleared when there is nothing to resume from or the service asks for a reset.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(value = "movies.cache.invalidation.enabled", havingValue = "true", matchIfMissing = true)
+public class CacheInvalidationListener {
+
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+    private static final String RESET_EVENT = "reset";
+
+    private final WebClient webClient;
+    private final MovieInfoCache movieInfoCache;
+    private final ReviewsCache reviewsCache;
+
+    @Value("${restClient.moviesInfo}")
+    private String moviesInfoUrl;
+
+    @Value("${restClient.reviews}")
+    private String reviewUrl;
+
+    @Value("${movies.cache.invalidation.minBackoff:1s}")
+    private Duration minBackoff;
+
+    @Value("${movies.cache.invalidation.maxBackoff:30s}")
+    private Duration maxBackoff;
+
+    private final Disposable.Composite subscriptions = Disposables.composite();
+
+    public CacheInvalidationListener(@Qualifier("changeFeedWebClient") WebClient webClient, MovieInfoCache movieInfoCache,
+                                     ReviewsCache reviewsCache) {
+        this.webClient = webClient;
+        this.movieInfoCache = movieInfoCache;
+        this.reviewsCache = reviewsCache;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        subscriptions.add(follow(moviesInfoUrl.concat("/stream"), MovieInfo.class,
+                movieInfoCache::invalidateAll,
+                movieInfo -> movieInfoCache.invalidate(movieInfo.getMovieInfoId())));
+
+        subscriptions.add(followReviews(reviewUrl.concat("/stream")));
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        subscriptions.dispose();
+    }
+
+    private <T> Disposable follow(String url, Class<T> eventType, Runnable onConnect, Consumer<T> onEvent) {
+        return Flux.defer(() -> {
+                    onConnect.run();
+                    return webClient.get()
+                            .uri(url)
+                            .accept(MediaType.APPLICATION_NDJSON)
+                            .retrieve()
+                            .bodyToFlux(eventType);
+                })
+                .doOnNext(onEvent)
+                .transform(feed -> reconnecting(feed, url))
+                .subscribe();
+    }
+
+    private Disposable followReviews(String url) {
+        var lastEventId = new AtomicReference<String>();
+
+        return Flux.defer(() -> {
+                    var resumeFrom = lastEventId.get();
+                    if (resumeFrom == null) {
+                        reviewsCache.invalidateAll();
+                    }
+                    return webClient.get()
+                            .uri(url)
+                            .accept(MediaType.TEXT_EVENT_STREAM)
+                            .headers(headers -> {
+                                if (resumeFrom != null) {
+                                    headers.set(LAST_EVENT_ID, resumeFrom);
+                                }
+                            })
+                            .retrieve()
+                            .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<Review>>() {});
+                })
+                .doOnNext(event -> {
+                    var review = event.data();
+                    if (RESET_EVENT.equals(event.event()) || review == null || review.getMovieInfoId() == null) {
+                        // a reset, or a delete of a review whose movie the review service couldn't tell
+                        reviewsCache.invalidateAll();
+                    } else {
+                        reviewsCache.invalidate(String.valueOf(review.getMovieInfoId()));
+                    }
+                    if (event.id() != null) {
+                        lastEventId.set(event.id());
+                    }
+                })
+                .transform(feed -> reconnecting(feed, url))
+                .subscribe();
+    }
+
+    private <T> Flux<T> reconnecting(Flux<T> feed, String url) {
+        return feed
+                .doOnError(ex -> log.warn("Change feed {} failed, reconnecting : {}", url, ex.getMessage()))
+                // the server closing the feed is treated like a failure, both reconnect with backoff
+                .concatWith(Flux.error(() -> new IllegalStateException("Change feed " + url + " completed")))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, minBackoff)
+                        .maxBackoff(maxBackoff)
+                        .transientErrors(true));
+    }
+}
@@ -0,0 +1,149 @@
+package com.reactivespring.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.reactivespring.client.MovieInfoRestClient;
+import com.reactivespring.deadline.Deadline;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.trace.Trace;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Bounded, TTL based cache in front of {@link MovieInfoRestClient}.
+ * <p>
+ * Entries older than {@code refreshAfter} are still served while a reload runs in the background
+ * (stale-while-revalidate), entries older than {@code ttl} are dropped. The reload is a conditional GET on the ETag
+ * of the cached movie info, so an unchanged one isn't transferred again. A 404 from movies-info-service is
+ * cached as an empty value for {@code negativeTtl}, any other failure is not cached.
+ * <p>
+ * A load is shared by every request waiting for the entry and outlives the one that started it, so rather than that
+ * request's {@link Deadline} it gets one of its own, {@code loadTimeout} from when it starts.
+ */
+@Component
+public class MovieInfoCache {
+
+    private final MovieInfoRestClient movieInfoRestClient;
+
+    private final Duration loadTimeout;
+
+    private final AsyncLoadingCache<String, Optional<MovieInfo>> cache;
+
+    public MovieInfoCache(MovieInfoRestClient movieInfoRestClient,
+                          @Value("${movies.cache.movieInfo.maximumSize:10000}") long maximumSize,
+                          @Value("${movies.cache.movieInfo.ttl:10m}") Duration ttl,
+                          @Value("${movies.cache.movieInfo.refreshAfter:1m}") Duration refreshAfter,
+                          @Value("${movies.cache.movieInfo.negativeTtl:30s}") Duration negativeTtl,
+                          @Value("${movies.cache.movieInfo.loadTimeout:5s}") Duration loadTimeout) {
+        this.movieInfoRestClient = movieInfoRestClient;
+        this.loadTimeout = loadTimeout;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new MovieInfoExpiry(ttl, negativeTtl))
+                .refreshAfterWrite(refreshAfter)
+                .recordStats()
+                .buildAsync(new AsyncCacheLoader<String, Optional<MovieInfo>>() {
+                    @Override
+                    public CompletableFuture<Optional<MovieInfo>> asyncLoad(String movieId, Executor executor) {
+                        return load(movieInfoRestClient.retriveMovieInfo(movieId)).toFuture();
+                    }
+
+                    @Override
+                    public CompletableFuture<Optional<MovieInfo>> asyncReload(String movieId, Optional<MovieInfo> oldValue,
+                                                                              Executor executor) {
+                        // an unchanged movie info costs movies-info-service a 304 instead of the whole body
+                        return load(oldValue
+                                .map(movieInfo -> movieInfoRestClient.revalidateMovieInfo(movieId, movieInfo))
+                                .orElseGet(() -> movieInfoRestClient.retriveMovieInfo(movieId)))
+                                .toFuture();
+                    }
+                });
+
+        // cache.gets{result=hit|miss}, cache.evictions, cache.size ... tagged with cache=movieInfo
+        CaffeineCacheMetrics.monitor(Metrics.globalRegistry, cache.synchronous(), "movieInfo");
+    }
+
+    public Mono<MovieInfo> retriveMovieInfo(String movieId) {
+        // thenApply gives every caller its own future, so a cancelled caller doesn't cancel the shared load; the
+        // load is traced with the request that started it, but has a deadline of its own
+        return Mono.deferContextual(context -> Mono.fromFuture(get(movieId, (id, executor) ->
+                        load(movieInfoRestClient.retriveMovieInfo(id)).contextWrite(Trace.contextOf(context)).toFuture())
+                        .thenApply(Function.identity())))
+                .flatMap(movieInfo -> movieInfo.map(Mono::just)
+                        .orElseGet(() -> Mono.error(new MoviesInfoClientException(
+                                "No Movie found for given movieId : " + movieId, HttpStatus.NOT_FOUND.value()))));
+    }
+
+    private CompletableFuture<Optional<MovieInfo>> get(String movieId,
+                                                        BiFunction<String, Executor, CompletableFuture<Optional<MovieInfo>>> loader) {
+        var loading = new AtomicBoolean();
+        var movieInfo = cache.get(movieId, (id, executor) -> {
+            loading.set(true);
+            return loader.apply(id, executor);
+        });
+        if (!loading.get() && movieInfo.isCompletedExceptionally()) {
+            // Caffeine drops a failed load only after telling its callers, a request right behind them would get
+            // the same failure without a call of its own
+            cache.asMap().remove(movieId, movieInfo);
+            movieInfo = cache.get(movieId, loader);
+        }
+        return movieInfo;
+    }
+
+    public void invalidate(String movieId) {
+        cache.synchronous().invalidate(movieId);
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    private Mono<Optional<MovieInfo>> load(Mono<MovieInfo> movieInfo) {
+        return movieInfo
+                .map(Optional::of)
+                .onErrorResume(MoviesInfoClientException.class,
+                        ex -> ex.getStatusCode() == HttpStatus.NOT_FOUND.value() ? Mono.just(Optional.empty()) : Mono.error(ex))
+                .contextWrite(context -> context.putAll(Deadline.after(loadTimeout).toContext().readOnly()));
+    }
+
+    private static class MovieInfoExpiry implements Expiry<String, Optional<MovieInfo>> {
+
+        private final long ttlNanos;
+        private final long negativeTtlNanos;
+
+        MovieInfoExpiry(Duration ttl, Duration negativeTtl) {
+            this.ttlNanos = ttl.toNanos();
+            this.negativeTtlNanos = negativeTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(String movieId, Optional<MovieInfo> movieInfo, long currentTime) {
+            return movieInfo.isPresent() ? ttlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String movieId, Optional<MovieInfo> movieInfo, long currentTime, long currentDuration) {
+            return expireAfterCreate(movieId, movieInfo, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String movieId, Optional<MovieInfo> movieInfo, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.reactivespring.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.client.ReviewRestClient;
+import com.reactivespring.deadline.Deadline;
+import com.reactivespring.domain.Review;
+import com.reactivespring.trace.Trace;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Review lists per movieInfoId in front of {@link ReviewRestClient}, same expiry and refresh model as
+ * {@link MovieInfoCache}, loads included. A movie without reviews is cached as an empty list.
+ */
+@Component
+public class ReviewsCache {
+
+    private final ReviewRestClient reviewRestClient;
+
+    private final Duration loadTimeout;
+
+    private final AsyncLoadingCache<String, List<Review>> cache;
+
+    public ReviewsCache(ReviewRestClient reviewRestClient,
+                        @Value("${movies.cache.reviews.maximumSize:10000}") long maximumSize,
+                        @Value("${movies.cache.reviews.ttl:10m}") Duration ttl,
+                        @Value("${movies.cache.reviews.refreshAfter:1m}") Duration refreshAfter,
+                        @Value("${movies.cache.reviews.loadTimeout:5s}") Duration loadTimeout) {
+        this.reviewRestClient = reviewRestClient;
+        this.loadTimeout = loadTimeout;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .refreshAfterWrite(refreshAfter)
+                .recordStats()
+                .buildAsync((movieInfoId, executor) -> load(movieInfoId).toFuture());
+
+        CaffeineCacheMetrics.monitor(Metrics.globalRegistry, cache.synchronous(), "reviews");
+    }
+
+    public Mono<List<Review>> retriveReviews(String movieInfoId) {
+        // traced with the request that starts the load, see MovieInfoCache
+        return Mono.deferContextual(context -> Mono.fromFuture(get(movieInfoId, (id, executor) ->
+                        load(id).contextWrite(Trace.contextOf(context)).toFuture())
+                .thenApply(Function.identity())));
+    }
+
+    private CompletableFuture<List<Review>> get(String movieInfoId,
+                                                BiFunction<String, Executor, CompletableFuture<List<Review>>> loader) {
+        var loading = new AtomicBoolean();
+        var reviews = cache.get(movieInfoId, (id, executor) -> {
+            loading.set(true);
+            return loader.apply(id, executor);
+        });
+        if (!loading.get() && reviews.isCompletedExceptionally()) {
+            // a failed load of another request that Caffeine hasn't dropped yet, see MovieInfoCache
+            cache.asMap().remove(movieInfoId, reviews);
+            reviews = cache.get(movieInfoId, loader);
+        }
+        return reviews;
+    }
+
+    private Mono<List<Review>> load(String movieInfoId) {
+        return reviewRestClient.retriveReviews(movieInfoId)
+                .collectList()
+                .contextWrite(context -> context.putAll(Deadline.after(loadTimeout).toContext().readOnly()));
+    }
+
+    public void invalidate(String movieInfoId) {
+        cache.synchronous().invalidate(movieInfoId);
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+}
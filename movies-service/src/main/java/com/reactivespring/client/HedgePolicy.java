@@ -0,0 +1,108 @@
+package com.reactivespring.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Hedges idempotent calls of a downstream client against a slow response. If an attempt hasn't answered once the
+ * {@code percentile} of recent latencies has passed, a second one is sent and whichever answers first is taken,
+ * the other one is cancelled. A hedge that fails, e.g. turned away by a full bulkhead or an open breaker, leaves
+ * the call to the first attempt. A response stuck in a GC pause or a slow replica then costs about as much as a
+ * typical one.
+ * <p>
+ * Hedges are paid from a {@link RetryBudget}, which caps them at a share of the calls. Until enough latencies
+ * have been recorded nothing is hedged. Hedges sent, hedges that answered first and hedges the budget didn't
+ * allow are counted in {@code movies.client.hedge}, and the current delay is published as
+ * {@code movies.client.hedge.delay}, each tagged with the client.
+ */
+public class HedgePolicy {
+
+    private static final int SAMPLES = 1000;
+    private static final int MIN_SAMPLES = 100;
+    private static final long REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final boolean enabled;
+    private final long minDelayNanos;
+    private final RetryBudget budget;
+    private final LatencyTracker latencies;
+
+    private final Counter hedged;
+    private final Counter won;
+    private final Counter budgetExhausted;
+
+    public HedgePolicy(String client, boolean enabled, double percentile, Duration minDelay, RetryBudget budget) {
+        this.enabled = enabled;
+        this.minDelayNanos = minDelay.toNanos();
+        this.budget = budget;
+        this.latencies = new LatencyTracker(SAMPLES, percentile, MIN_SAMPLES, REFRESH_INTERVAL_NANOS, System::nanoTime);
+        this.hedged = hedgeCounter(client, "hedged");
+        this.won = hedgeCounter(client, "won");
+        this.budgetExhausted = hedgeCounter(client, "budget_exhausted");
+
+        Gauge.builder("movies.client.hedge.delay", this, policy -> policy.delayNanos() / 1e6)
+                .description("Time after which a call is hedged, in milliseconds, -1 while it isn't known yet")
+                .tag("client", client)
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Subscribes to a new attempt from {@code call} for the first call and, if needed, for the hedge.
+     */
+    public <T> Mono<T> apply(Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+
+        return Mono.defer(() -> {
+            budget.deposit();
+            var primary = timed(call);
+            var delay = delayNanos();
+            if (delay < 0) {
+                return primary;
+            }
+
+            Mono<T> hedge = Mono.delay(Duration.ofNanos(delay))
+                    .flatMap(tick -> {
+                        if (!budget.tryWithdraw()) {
+                            budgetExhausted.increment();
+                            // the first attempt alone decides
+                            return Mono.never();
+                        }
+                        hedged.increment();
+                        return timed(call)
+                                .doOnNext(value -> won.increment())
+                                // only the first attempt's outcome may fail the call
+                                .onErrorResume(ex -> Mono.never());
+                    });
+
+            // an error of the first attempt isn't hedged, that's what retries are for
+            return Mono.firstWithSignal(primary, hedge);
+        });
+    }
+
+    private long delayNanos() {
+        var percentile = latencies.percentileNanos();
+        return percentile < 0 ? -1 : Math.max(percentile, minDelayNanos);
+    }
+
+    private <T> Mono<T> timed(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            return call.get().doOnNext(value -> latencies.record(System.nanoTime() - start));
+        });
+    }
+
+    private static Counter hedgeCounter(String client, String outcome) {
+        return Counter.builder("movies.client.hedge")
+                .description("Hedged downstream calls")
+                .tag("client", client)
+                .tag("outcome", outcome)
+                .register(Metrics.globalRegistry);
+    }
+}
@@ -0,0 +1,62 @@
+package com.reactivespring.client;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * A percentile of the latest {@code size} latencies of a call. Computing it sorts a copy of the samples, so the
+ * result is reused for {@code refreshInterval} and only computed again after that. Until {@code minSamples}
+ * latencies have been recorded there is no percentile.
+ */
+class LatencyTracker {
+
+    private final AtomicLongArray samples;
+    private final AtomicLong recorded = new AtomicLong();
+    private final double percentile;
+    private final int minSamples;
+    private final long refreshIntervalNanos;
+    private final LongSupplier nanoTime;
+
+    private volatile long percentileNanos = -1;
+    private volatile long computedAt;
+
+    LatencyTracker(int size, double percentile, int minSamples, long refreshIntervalNanos, LongSupplier nanoTime) {
+        this.samples = new AtomicLongArray(size);
+        this.percentile = percentile;
+        this.minSamples = Math.min(minSamples, size);
+        this.refreshIntervalNanos = refreshIntervalNanos;
+        this.nanoTime = nanoTime;
+    }
+
+    void record(long latencyNanos) {
+        samples.lazySet((int) (recorded.getAndIncrement() % samples.length()), latencyNanos);
+    }
+
+    /**
+     * The percentile in nanoseconds, or -1 while there are fewer than {@code minSamples} latencies.
+     */
+    long percentileNanos() {
+        var now = nanoTime.getAsLong();
+        if (percentileNanos < 0 || now - computedAt >= refreshIntervalNanos) {
+            percentileNanos = compute();
+            computedAt = now;
+        }
+        return percentileNanos;
+    }
+
+    private long compute() {
+        var count = (int) Math.min(recorded.get(), samples.length());
+        if (count < minSamples) {
+            return -1;
+        }
+
+        var sorted = new long[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        return sorted[(int) Math.min(count - 1, Math.ceil(percentile * count) - 1)];
+    }
+}
@@ -3,16 +3,20 @@ package com.reactivespring.client;
 import com.reactivespring.domain.MovieInfo;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.trace.Tracer;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.util.retry.Retry;
-import reactor.util.retry.RetryBackoffSpec;
 
-import java.time.Duration;
+import java.util.List;
 
 @Component
 public class MovieInfoRestClient {
@@ -22,21 +26,58 @@ public class MovieInfoRestClient {
     @Value("${restClient.moviesInfo}")
     private String moviesInfoUrl;
 
-    public MovieInfoRestClient(WebClient webClient) {
+    private final RequestCoalescer<String, MovieInfo> coalescer = new RequestCoalescer<>("moviesInfo");
+
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final RetryPolicy retryPolicy;
+    private final HedgePolicy hedgePolicy;
+    private final Tracer tracer;
+
+    public MovieInfoRestClient(@Qualifier("moviesInfoWebClient") WebClient webClient,
+                               @Qualifier("moviesInfoCircuitBreaker") CircuitBreaker circuitBreaker,
+                               @Qualifier("moviesInfoBulkhead") Bulkhead bulkhead,
+                               @Qualifier("moviesInfoRetryPolicy") RetryPolicy retryPolicy,
+                               @Qualifier("moviesInfoHedgePolicy") HedgePolicy hedgePolicy,
+                               Tracer tracer) {
         this.webClient = webClient;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.retryPolicy = retryPolicy;
+        this.hedgePolicy = hedgePolicy;
+        this.tracer = tracer;
     }
 
     public Mono<MovieInfo> retriveMovieInfo(String movieId) {
+        return revalidateMovieInfo(movieId, null);
+    }
 
-        var url = moviesInfoUrl.concat("/{id}");
+    /**
+     * Like {@link #retriveMovieInfo(String)}, but conditional on the ETag of {@code cached}: when the movie info
+     * hasn't changed since, movies-info-service answers 304 without a body and {@code cached} is returned.
+     */
+    public Mono<MovieInfo> revalidateMovieInfo(String movieId, MovieInfo cached) {
+        // concurrent requests for the same movie share one downstream call
+        return coalescer.execute(movieId, () -> fetchMovieInfo(movieId, cached));
+    }
 
-        var retrySpec = Retry.fixedDelay(3, Duration.ofMillis(100))
-                .filter(ex -> ex instanceof MoviesInfoServerException)
-                .onRetryExhaustedThrow((retryBackoffSpec, retrySignal) -> Exceptions.propagate(retrySignal.failure()));
+    private Mono<MovieInfo> fetchMovieInfo(String movieId, MovieInfo cached) {
+        // a hedge is one more attempt through the bulkhead and the breaker, a retry starts over with a new hedge
+        return hedgePolicy.apply(() -> callMovieInfo(movieId, cached))
+                .transform(retryPolicy::apply);
+    }
 
+    private Mono<MovieInfo> callMovieInfo(String movieId, MovieInfo cached) {
+
+        var url = moviesInfoUrl.concat("/{id}");
 
         return webClient.get()
                 .uri(url, movieId)
+                .headers(headers -> {
+                    if (cached != null && cached.getEtag() != null) {
+                        headers.setIfNoneMatch(cached.getEtag());
+                    }
+                })
                 .retrieve()
                 .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
                     if(clientResponse.statusCode().equals(HttpStatus.NOT_FOUND)) {
@@ -53,8 +94,44 @@ public class MovieInfoRestClient {
                             .flatMap(value ->
                                     Mono.error(new MoviesInfoServerException(value)))
                 )
-                .bodyToMono(MovieInfo.class)
-                .retryWhen(retrySpec)
-                .log();
+                .toEntity(MovieInfo.class)
+                .flatMap(response -> {
+                    if (response.getStatusCode() == HttpStatus.NOT_MODIFIED && cached != null) {
+                        return Mono.just(cached);
+                    }
+                    return Mono.justOrEmpty(response.getBody())
+                            .doOnNext(movieInfo -> movieInfo.setEtag(response.getHeaders().getETag()));
+                })
+                // per attempt, so once the breaker opens the remaining retries fail fast as well
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                // a span per attempt, hedges and retries included
+                .transform(tracer.mono("movieInfo.attempt"));
+    }
+
+    public Flux<MovieInfo> retriveMovieInfos(List<String> movieIds) {
+
+        var url = moviesInfoUrl.concat("/batch");
+
+        // ids that don't exist are simply missing from the response
+        return webClient.post()
+                .uri(url)
+                .bodyValue(movieIds)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse ->
+                    clientResponse.bodyToMono(String.class)
+                            .flatMap(value ->
+                                    Mono.error(new MoviesInfoClientException(value, clientResponse.statusCode().value())))
+                )
+                .onStatus(HttpStatus::is5xxServerError, clientResponse ->
+                    clientResponse.bodyToMono(String.class)
+                            .flatMap(value ->
+                                    Mono.error(new MoviesInfoServerException(value)))
+                )
+                .bodyToFlux(MovieInfo.class)
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transform(tracer.flux("movieInfos.attempt"))
+                .transform(retryPolicy::apply);
     }
 }
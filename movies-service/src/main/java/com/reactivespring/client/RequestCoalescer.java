@@ -0,0 +1,70 @@
+package com.reactivespring.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for downstream calls: concurrent subscribers asking for the same key share one in-flight
+ * call and receive its result or error. The key is released as soon as the call terminates or every
+ * subscriber has cancelled, so nothing is cached beyond the lifetime of the call.
+ */
+public class RequestCoalescer<K, V> {
+
+    private final Map<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter requests;
+    private final Counter coalesced;
+
+    public RequestCoalescer(String client) {
+        this.requests = Counter.builder("movies.client.coalescer.requests")
+                .description("Calls that went through the coalescer")
+                .tag("client", client)
+                .register(Metrics.globalRegistry);
+        this.coalesced = Counter.builder("movies.client.coalescer.coalesced")
+                .description("Calls that joined an in-flight call instead of starting a new one")
+                .tag("client", client)
+                .register(Metrics.globalRegistry);
+    }
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+        return Mono.defer(() -> {
+            requests.increment();
+
+            var created = new AtomicBoolean();
+            var shared = inFlight.computeIfAbsent(key, k -> {
+                created.set(true);
+                return share(k, call.get());
+            });
+
+            if (!created.get()) {
+                coalesced.increment();
+            }
+            return shared;
+        });
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private Mono<V> share(K key, Mono<V> call) {
+        var self = new AtomicReference<Mono<V>>();
+        // only remove our own entry, a newer call for the same key may already be registered; on success or error
+        // before the signal reaches the subscribers, so a caller that comes after them starts a new call instead of
+        // being handed the result they already had
+        Runnable release = () -> inFlight.remove(key, self.get());
+        var shared = call.doOnSuccess(value -> release.run())
+                .doOnError(ex -> release.run())
+                .doFinally(signal -> release.run())
+                .share();
+        self.set(shared);
+        return shared;
+    }
+}
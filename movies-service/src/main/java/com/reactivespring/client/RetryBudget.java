@@ -0,0 +1,61 @@
+package com.reactivespring.client;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the retries of a client to a share of its calls. Every call deposits {@code ratio} of a retry and every
+ * retry withdraws a whole one, so while a service fails its load grows by at most that share instead of
+ * multiplying by the number of attempts. A client with little traffic still earns {@code minRetriesPerSecond}.
+ * The balance is capped at ten seconds' worth of that floor, which bounds a burst of retries after a quiet
+ * period.
+ */
+public class RetryBudget {
+
+    private static final int MAX_BALANCE_SECONDS = 10;
+
+    private final double ratio;
+    private final double minRetriesPerNano;
+    private final double maxBalance;
+    private final LongSupplier nanoTime;
+
+    private double balance;
+    private long refilledAt;
+
+    public RetryBudget(double ratio, int minRetriesPerSecond) {
+        this(ratio, minRetriesPerSecond, System::nanoTime);
+    }
+
+    RetryBudget(double ratio, int minRetriesPerSecond, LongSupplier nanoTime) {
+        this.ratio = ratio;
+        this.minRetriesPerNano = minRetriesPerSecond / 1e9;
+        this.maxBalance = Math.max(minRetriesPerSecond * MAX_BALANCE_SECONDS, 1);
+        this.nanoTime = nanoTime;
+        this.balance = maxBalance;
+        this.refilledAt = nanoTime.getAsLong();
+    }
+
+    public synchronized void deposit() {
+        refill();
+        balance = Math.min(balance + ratio, maxBalance);
+    }
+
+    public synchronized boolean tryWithdraw() {
+        refill();
+        if (balance < 1) {
+            return false;
+        }
+        balance -= 1;
+        return true;
+    }
+
+    synchronized double balance() {
+        refill();
+        return balance;
+    }
+
+    private void refill() {
+        var now = nanoTime.getAsLong();
+        balance = Math.min(balance + (now - refilledAt) * minRetriesPerNano, maxBalance);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,107 @@
+package com.reactivespring.client;
+
+import com.reactivespring.deadline.Deadline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Retries the calls of a downstream client. Failed attempts are retried up to {@code maxRetries} times. The
+ * backoff grows exponentially from {@code minBackoff} to {@code maxBackoff}, and the actual delay is drawn at
+ * random below it (full jitter). This keeps requests that failed together from retrying together.
+ * <p>
+ * A retry is only made while the {@link RetryBudget} allows it. It is also skipped when the {@link Deadline}
+ * in the subscriber context would pass before the backoff is over, since the caller can't use an answer that
+ * arrives after it has given up.
+ * Outcomes are counted in {@code movies.client.retry} tagged with the client.
+ */
+public class RetryPolicy {
+
+    private final Predicate<Throwable> retryable;
+    private final int maxRetries;
+    private final Duration minBackoff;
+    private final Duration maxBackoff;
+    private final RetryBudget budget;
+
+    private final Counter retried;
+    private final Counter attemptsExhausted;
+    private final Counter budgetExhausted;
+    private final Counter deadlineExceeded;
+
+    public RetryPolicy(String client, int maxRetries, Duration minBackoff, Duration maxBackoff, RetryBudget budget,
+                       Predicate<Throwable> retryable) {
+        this.retryable = retryable;
+        this.maxRetries = maxRetries;
+        this.minBackoff = minBackoff;
+        this.maxBackoff = maxBackoff;
+        this.budget = budget;
+        this.retried = retryCounter(client, "retried");
+        this.attemptsExhausted = retryCounter(client, "attempts_exhausted");
+        this.budgetExhausted = retryCounter(client, "budget_exhausted");
+        this.deadlineExceeded = retryCounter(client, "deadline_exceeded");
+    }
+
+    public <T> Mono<T> apply(Mono<T> call) {
+        return Mono.deferContextual(context -> {
+            budget.deposit();
+            return call.retryWhen(retry(Deadline.from(context)));
+        });
+    }
+
+    public <T> Flux<T> apply(Flux<T> call) {
+        return Flux.deferContextual(context -> {
+            budget.deposit();
+            return call.retryWhen(retry(Deadline.from(context)));
+        });
+    }
+
+    /**
+     * Upper bound of the delay before the given retry, the delay itself is drawn between zero and this bound.
+     */
+    Duration backoff(long retry) {
+        var ceiling = minBackoff.toMillis() << Math.min(retry, 30);
+        return Duration.ofMillis(Math.min(ceiling, maxBackoff.toMillis()));
+    }
+
+    private Retry retry(Optional<Deadline> deadline) {
+        // the failure itself is propagated once retrying stops, as if there had been no retries
+        return Retry.from(signals -> signals.concatMap(signal -> {
+            var failure = signal.failure();
+            if (!retryable.test(failure)) {
+                return Mono.error(failure);
+            }
+            if (signal.totalRetries() >= maxRetries) {
+                attemptsExhausted.increment();
+                return Mono.error(failure);
+            }
+
+            var delay = Duration.ofMillis(ThreadLocalRandom.current().nextLong(backoff(signal.totalRetries()).toMillis() + 1));
+            if (deadline.filter(d -> d.remaining().compareTo(delay) <= 0).isPresent()) {
+                deadlineExceeded.increment();
+                return Mono.error(failure);
+            }
+            if (!budget.tryWithdraw()) {
+                budgetExhausted.increment();
+                return Mono.error(failure);
+            }
+
+            retried.increment();
+            return Mono.delay(delay);
+        }));
+    }
+
+    private static Counter retryCounter(String client, String outcome) {
+        return Counter.builder("movies.client.retry")
+                .description("Retry decisions on failed downstream calls")
+                .tag("client", client)
+                .tag("outcome", outcome)
+                .register(Metrics.globalRegistry);
+    }
+}
@@ -1,18 +1,31 @@
 package com.reactivespring.client;
 
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
 import com.reactivespring.exception.ReviewsClientException;
 import com.reactivespring.exception.ReviewsServerException;
+import com.reactivespring.trace.Tracer;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+import java.util.Map;
+
 @Component
 public class ReviewRestClient {
 
@@ -21,23 +34,83 @@ public class ReviewRestClient {
     @Value("${restClient.reviews}")
     private String reviewUrl;
 
-    public ReviewRestClient(WebClient webClient) {
+    private final RequestCoalescer<String, List<Review>> coalescer = new RequestCoalescer<>("reviews");
+
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final RetryPolicy retryPolicy;
+    private final HedgePolicy hedgePolicy;
+    private final Tracer tracer;
+
+    public ReviewRestClient(@Qualifier("reviewsWebClient") WebClient webClient,
+                            @Qualifier("reviewsCircuitBreaker") CircuitBreaker circuitBreaker,
+                            @Qualifier("reviewsBulkhead") Bulkhead bulkhead,
+                            @Qualifier("reviewsRetryPolicy") RetryPolicy retryPolicy,
+                            @Qualifier("reviewsHedgePolicy") HedgePolicy hedgePolicy,
+                            Tracer tracer) {
         this.webClient = webClient;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.retryPolicy = retryPolicy;
+        this.hedgePolicy = hedgePolicy;
+        this.tracer = tracer;
     }
 
     public Flux<Review> retriveReviews(String movieInfoId) {
-        var uri = UriComponentsBuilder.fromHttpUrl(reviewUrl)
-                .queryParam("movieInfoId", movieInfoId)
-                .buildAndExpand()
-                .toUriString();
+        // concurrent requests for the same movie share one downstream call
+        return coalescer.execute(movieInfoId, () -> fetchReviews(movieInfoId))
+                .flatMapIterable(reviews -> reviews);
+    }
+
+    private Mono<List<Review>> fetchReviews(String movieInfoId) {
+        // a hedge is one more attempt through the bulkhead and the breaker, a retry starts over with a new hedge
+        return hedgePolicy.apply(() -> callReviews(movieInfoId))
+                .transform(retryPolicy::apply);
+    }
+
+    private Mono<List<Review>> callReviews(String movieInfoId) {
+        return reviews(movieInfoId)
+                .collectList()
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                // a span per attempt, hedges and retries included
+                .transform(tracer.mono("reviews.attempt"));
+    }
+
+    /**
+     * Reviews of a movie as they are decoded, for movies with more reviews than are worth holding in memory.
+     * Skips the coalescing and the hedge, each subscriber makes its own call. The bulkhead, the breaker and the
+     * retries only cover the call up to the response headers, 5xx fail it before the body is read. Reading the
+     * body takes as long as the client reading the movie, it would count as a slow call and hold a permit.
+     */
+    public Flux<Review> streamReviews(String movieInfoId) {
+        return retrieveReviews(movieInfoId)
+                .toEntityFlux(Review.class)
+                .onErrorResume(WebClientResponseException.NotFound.class, ex -> Mono.empty())
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transform(tracer.mono("reviews.attempt"))
+                .transform(retryPolicy::apply)
+                .flatMapMany(HttpEntity::getBody);
+    }
 
+    private Flux<Review> reviews(String movieInfoId) {
+        return retrieveReviews(movieInfoId)
+                .bodyToFlux(Review.class)
+                .onErrorResume(WebClientResponseException.NotFound.class, ex -> Flux.empty());
+    }
+
+    private WebClient.ResponseSpec retrieveReviews(String movieInfoId) {
+        // NDJSON and JSON arrays are both decoded one review at a time, so maxInMemorySize bounds a single review
         return webClient
                 .get()
-                .uri(uri)
+                .uri(reviewUrl + "?movieInfoId={movieInfoId}", movieInfoId)
+                .accept(MediaType.APPLICATION_NDJSON, MediaType.APPLICATION_JSON)
                 .retrieve()
                 .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
                     if(clientResponse.statusCode().equals(HttpStatus.NOT_FOUND)) {
-                        return Mono.empty();
+                        // no reviews for this movie, mapped to an empty list below
+                        return clientResponse.createException();
                     }
                     return clientResponse.bodyToMono(String.class)
                             .flatMap(value ->
@@ -47,8 +120,51 @@ public class ReviewRestClient {
                         clientResponse.bodyToMono(String.class)
                                 .flatMap(value ->
                                         Mono.error(new ReviewsServerException(value)))
+                );
+    }
+
+    public Mono<Map<String, List<Review>>> retriveReviews(List<String> movieInfoIds) {
+        // reviews for all the movies in one round trip, grouped by movieInfoId
+        return webClient
+                .get()
+                .uri(reviewUrl + "?movieInfoIds={movieInfoIds}", String.join(",", movieInfoIds))
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse ->
+                        clientResponse.bodyToMono(String.class)
+                                .flatMap(value ->
+                                        Mono.error(new ReviewsClientException(value)))
                 )
-                .bodyToFlux(Review.class)
-                .log();
+                .onStatus(HttpStatus::is5xxServerError, clientResponse ->
+                        clientResponse.bodyToMono(String.class)
+                                .flatMap(value ->
+                                        Mono.error(new ReviewsServerException(value)))
+                )
+                .bodyToMono(new ParameterizedTypeReference<Map<String, List<Review>>>() {})
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transform(tracer.mono("reviews.batch.attempt"))
+                .transform(retryPolicy::apply);
+    }
+
+    public Mono<ReviewSummary> retriveReviewSummary(String movieInfoId) {
+        return webClient
+                .get()
+                .uri(reviewUrl + "/summary?movieInfoId={movieInfoId}", movieInfoId)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse ->
+                        clientResponse.bodyToMono(String.class)
+                                .flatMap(value ->
+                                        Mono.error(new ReviewsClientException(value)))
+                )
+                .onStatus(HttpStatus::is5xxServerError, clientResponse ->
+                        clientResponse.bodyToMono(String.class)
+                                .flatMap(value ->
+                                        Mono.error(new ReviewsServerException(value)))
+                )
+                .bodyToMono(ReviewSummary.class)
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transform(tracer.mono("reviewSummary.attempt"))
+                .transform(retryPolicy::apply);
     }
 }
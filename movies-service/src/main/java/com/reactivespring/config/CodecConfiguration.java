@@ -0,0 +1,24 @@
+package com.reactivespring.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+/**
+ * Server side writers on top of the ones Spring Boot registers, see {@link StreamingMovieWriter}.
+ */
+@Configuration
+public class CodecConfiguration implements WebFluxConfigurer {
+
+    private final ObjectMapper objectMapper;
+
+    public CodecConfiguration(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        configurer.customCodecs().register(new StreamingMovieWriter(objectMapper));
+    }
+}
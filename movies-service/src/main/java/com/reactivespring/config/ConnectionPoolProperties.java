@@ -0,0 +1,52 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import reactor.netty.http.HttpProtocol;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Connection pool, timeouts and instances of the WebClient of each downstream service, bound from
+ * {@code restClient.pools}.
+ */
+@Data
+@ConfigurationProperties(prefix = "rest-client.pools")
+public class ConnectionPoolProperties {
+
+    private Pool moviesInfo = new Pool();
+    private Pool reviews = new Pool();
+
+    @Data
+    public static class Pool {
+
+        private int maxConnections = 50;
+        // requests waiting for a connection beyond this fail right away instead of queueing
+        private int pendingAcquireMaxCount = 100;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+        // closed before the server or a load balancer in between drops them
+        private Duration maxIdleTime = Duration.ofSeconds(20);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictInBackground = Duration.ofSeconds(30);
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        private Duration responseTimeout = Duration.ofSeconds(5);
+        // h2c is tried first through an HTTP/1.1 upgrade, a server that doesn't take it keeps talking HTTP/1.1
+        private List<HttpProtocol> protocols = List.of(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        // connections of the HTTP/2 pool, each carries many concurrent streams
+        private int http2MaxConnections = 2;
+        // Smile is asked for ahead of JSON, see SmileExchangeFilter
+        private boolean smile = true;
+        // asks for gzip or deflate and inflates the response, for the bodies the service compresses
+        private boolean compress = true;
+        // largest body the codecs buffer, streamed arrays and NDJSON only buffer one element at a time
+        private DataSize maxInMemorySize = DataSize.ofKilobytes(256);
+        // replicas the calls are spread over, without any they go to the host of the configured url
+        private List<URI> instances = List.of();
+        private int ejectAfterFailures = 5;
+        private Duration ejectAboveLatency = Duration.ofSeconds(2);
+        private Duration ejectionTime = Duration.ofSeconds(30);
+    }
+}
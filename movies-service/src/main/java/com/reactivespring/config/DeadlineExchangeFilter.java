@@ -0,0 +1,54 @@
+package com.reactivespring.config;
+
+import com.reactivespring.deadline.Deadline;
+import com.reactivespring.exception.DeadlineExceededException;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClientRequest;
+
+import java.time.Duration;
+
+/**
+ * Passes the {@link Deadline} of the request on to the downstream service as the time left in
+ * {@link Deadline#TIMEOUT_HEADER}. The response timeout of the call is shortened to the same time. A call that
+ * would only start after the deadline, or that is still waiting for its response when it passes, fails with a
+ * {@link DeadlineExceededException}.
+ */
+class DeadlineExchangeFilter implements ExchangeFilterFunction {
+
+    private final Duration responseTimeout;
+
+    DeadlineExchangeFilter(Duration responseTimeout) {
+        this.responseTimeout = responseTimeout;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual(context -> Deadline.from(context)
+                .map(deadline -> exchange(request, next, deadline))
+                .orElseGet(() -> next.exchange(request)));
+    }
+
+    private Mono<ClientResponse> exchange(ClientRequest request, ExchangeFunction next, Deadline deadline) {
+        var remaining = deadline.remaining();
+        if (remaining.isNegative() || remaining.isZero()) {
+            return Mono.error(exceeded(request));
+        }
+
+        var timeout = remaining.compareTo(responseTimeout) < 0 ? remaining : responseTimeout;
+        var deadlineRequest = ClientRequest.from(request)
+                .header(Deadline.TIMEOUT_HEADER, String.valueOf(remaining.toMillis()))
+                .httpRequest(httpRequest -> httpRequest.<HttpClientRequest>getNativeRequest().responseTimeout(timeout))
+                .build();
+
+        return next.exchange(deadlineRequest)
+                .onErrorMap(ex -> deadline.isExpired(), ex -> exceeded(request));
+    }
+
+    private static DeadlineExceededException exceeded(ClientRequest request) {
+        return new DeadlineExceededException("Deadline exceeded calling " + request.method() + " " + request.url().getPath());
+    }
+}
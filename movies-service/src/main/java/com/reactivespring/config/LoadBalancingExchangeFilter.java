@@ -0,0 +1,210 @@
+package com.reactivespring.config;
+
+import com.reactivespring.exception.DeadlineExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads the calls of a WebClient over the instances of a downstream service. Requests keep their path and
+ * query, and only the scheme, host and port are replaced with those of the chosen instance.
+ * <p>
+ * The instance is chosen by the power of two choices. Two instances are picked at random and the call goes to
+ * the one with the lower cost, which is its requests in flight times its average latency. This avoids both
+ * busy and slow instances without the herding of always taking the single best one. The average fades while an
+ * instance isn't called, so a slow one is tried again after a while.
+ * <p>
+ * Instances are ejected passively. That happens after {@code ejectAfterFailures} consecutive 5xx responses or
+ * connection errors, or once their average latency is above {@code ejectAboveLatency}. They come back after
+ * {@code ejectionTime} with a clean slate. While every instance is ejected, all of them are used again.
+ */
+@Slf4j
+class LoadBalancingExchangeFilter implements ExchangeFilterFunction {
+
+    // weight of the latest latency in the moving average
+    private static final double LATENCY_WEIGHT = 0.2;
+    // an instance that hasn't been called for long is no longer judged by its old latency
+    private static final double LATENCY_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final List<Instance> instances;
+    private final int ejectAfterFailures;
+    private final long ejectAboveLatencyNanos;
+    private final long ejectionTimeNanos;
+    private final LongSupplier nanoTime;
+
+    private final Counter failureEjections;
+    private final Counter latencyEjections;
+
+    LoadBalancingExchangeFilter(String client, List<URI> instances, ConnectionPoolProperties.Pool pool) {
+        this(client, instances, pool, System::nanoTime);
+    }
+
+    LoadBalancingExchangeFilter(String client, List<URI> instances, ConnectionPoolProperties.Pool pool,
+                                LongSupplier nanoTime) {
+        this.instances = instances.stream().map(Instance::new).collect(Collectors.toList());
+        this.ejectAfterFailures = pool.getEjectAfterFailures();
+        this.ejectAboveLatencyNanos = pool.getEjectAboveLatency().toNanos();
+        this.ejectionTimeNanos = pool.getEjectionTime().toNanos();
+        this.nanoTime = nanoTime;
+        this.failureEjections = ejectionCounter(client, "failures");
+        this.latencyEjections = ejectionCounter(client, "latency");
+
+        this.instances.forEach(instance -> Gauge.builder("movies.client.lb.outstanding", instance.outstanding, AtomicInteger::get)
+                .description("Requests in flight to an instance of a downstream service")
+                .tag("client", client)
+                .tag("instance", instance.uri.toString())
+                .register(Metrics.globalRegistry));
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            var instance = choose();
+            var balancedRequest = ClientRequest.from(request)
+                    .url(instance.resolve(request.url()))
+                    .build();
+
+            var start = nanoTime.getAsLong();
+            // stays null for a call cancelled before its response, e.g. a hedge that lost or a call past its deadline
+            var failed = new AtomicReference<Boolean>();
+            instance.outstanding.incrementAndGet();
+            return next.exchange(balancedRequest)
+                    .doOnNext(response -> failed.set(response.statusCode().is5xxServerError()))
+                    // running out of the caller's time says nothing about the instance
+                    .doOnError(ex -> failed.set(!(ex instanceof DeadlineExceededException)))
+                    .doFinally(signal -> {
+                        instance.outstanding.decrementAndGet();
+                        record(instance, failed.get(), nanoTime.getAsLong() - start);
+                    });
+        });
+    }
+
+    List<URI> availableInstances() {
+        var now = nanoTime.getAsLong();
+        return instances.stream()
+                .filter(instance -> instance.isAvailable(now))
+                .map(instance -> instance.uri)
+                .collect(Collectors.toList());
+    }
+
+    private Instance choose() {
+        var now = nanoTime.getAsLong();
+        var available = instances.stream()
+                .filter(instance -> instance.isAvailable(now))
+                .collect(Collectors.toList());
+        if (available.isEmpty()) {
+            available = instances;
+        }
+        if (available.size() == 1) {
+            return available.get(0);
+        }
+
+        var random = ThreadLocalRandom.current();
+        var first = random.nextInt(available.size());
+        var second = random.nextInt(available.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        var a = available.get(first);
+        var b = available.get(second);
+        return a.cost(now) <= b.cost(now) ? a : b;
+    }
+
+    /**
+     * Takes the latency of every call into the average. A cancelled call took at least as long as it ran, which is
+     * what matters most for the slow instances whose calls get cancelled, but isn't counted as a failure or a
+     * success.
+     */
+    private void record(Instance instance, Boolean failed, long latencyNanos) {
+        var now = nanoTime.getAsLong();
+        synchronized (instance) {
+            if (!instance.isAvailable(now)) {
+                return;
+            }
+            instance.latencyNanos = instance.latencyNanos == 0
+                    ? latencyNanos
+                    : instance.latencyNanos + LATENCY_WEIGHT * (latencyNanos - instance.latencyNanos);
+            instance.recordedAt = now;
+            if (failed != null) {
+                instance.consecutiveFailures = failed ? instance.consecutiveFailures + 1 : 0;
+            }
+
+            if (instance.consecutiveFailures >= ejectAfterFailures) {
+                eject(instance, now, failureEjections);
+            } else if (instance.latencyNanos > ejectAboveLatencyNanos) {
+                eject(instance, now, latencyEjections);
+            }
+        }
+    }
+
+    private void eject(Instance instance, long now, Counter ejections) {
+        log.warn("Ejecting {} for {} after {} consecutive failures and an average latency of {}ms", instance.uri,
+                Duration.ofNanos(ejectionTimeNanos), instance.consecutiveFailures, (long) (instance.latencyNanos / 1e6));
+        instance.ejectedUntil = now + ejectionTimeNanos;
+        instance.ejected = true;
+        instance.consecutiveFailures = 0;
+        instance.latencyNanos = 0;
+        ejections.increment();
+    }
+
+    private static Counter ejectionCounter(String client, String reason) {
+        return Counter.builder("movies.client.lb.ejections")
+                .description("Instances of a downstream service taken out of the rotation")
+                .tag("client", client)
+                .tag("reason", reason)
+                .register(Metrics.globalRegistry);
+    }
+
+    private static class Instance {
+
+        private final URI uri;
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        // written while holding the instance
+        private volatile double latencyNanos;
+        private volatile long recordedAt;
+        private int consecutiveFailures;
+        private volatile long ejectedUntil;
+        private volatile boolean ejected;
+
+        Instance(URI uri) {
+            this.uri = uri;
+        }
+
+        boolean isAvailable(long now) {
+            return !ejected || now - ejectedUntil >= 0;
+        }
+
+        double cost(long now) {
+            var latency = latencyNanos * Math.exp(-(now - recordedAt) / LATENCY_DECAY_NANOS);
+            // an instance without a latency yet is tried first
+            return (outstanding.get() + 1) * Math.max(latency, 1);
+        }
+
+        URI resolve(URI url) {
+            return UriComponentsBuilder.fromUri(url)
+                    .scheme(uri.getScheme())
+                    .host(uri.getHost())
+                    .port(uri.getPort())
+                    .build(true)
+                    .toUri();
+        }
+    }
+}
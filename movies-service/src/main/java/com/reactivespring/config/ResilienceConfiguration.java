@@ -0,0 +1,157 @@
+package com.reactivespring.config;
+
+import com.reactivespring.client.HedgePolicy;
+import com.reactivespring.client.RetryBudget;
+import com.reactivespring.client.RetryPolicy;
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.exception.ReviewsClientException;
+import com.reactivespring.exception.ReviewsServerException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+import java.util.function.Predicate;
+
+/**
+ * A circuit breaker, a bulkhead, a {@link RetryPolicy} and a {@link HedgePolicy} per downstream service. The breaker opens on the rate
+ * of failed or slow calls and rejects calls until the open state expires, then lets a few probe calls through to
+ * decide whether to close again. 4xx responses say nothing about the health of the service and are ignored, as
+ * are calls the bulkhead rejected and calls cut short by the deadline of the caller.
+ * <p>
+ * States and call outcomes are published as {@code resilience4j.circuitbreaker.*}, free permits as
+ * {@code resilience4j.bulkhead.*}, each tagged with the name of the service, and state transitions are
+ * counted in {@code movies.client.circuitbreaker.transitions}.
+ * <p>
+ * Only 5xx responses are retried. Each attempt goes through the breaker and the bulkhead, so an open breaker
+ * also ends the retries.
+ */
+@Slf4j
+@Configuration
+@EnableConfigurationProperties(ResilienceProperties.class)
+public class ResilienceConfiguration {
+
+    @Bean
+    public CircuitBreakerRegistry circuitBreakerRegistry() {
+        var registry = CircuitBreakerRegistry.ofDefaults();
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(Metrics.globalRegistry);
+        return registry;
+    }
+
+    @Bean
+    public BulkheadRegistry bulkheadRegistry() {
+        var registry = BulkheadRegistry.ofDefaults();
+        TaggedBulkheadMetrics.ofBulkheadRegistry(registry).bindTo(Metrics.globalRegistry);
+        return registry;
+    }
+
+    @Bean
+    public CircuitBreaker moviesInfoCircuitBreaker(CircuitBreakerRegistry registry, ResilienceProperties properties) {
+        return circuitBreaker(registry, "moviesInfo", properties.getMoviesInfo());
+    }
+
+    @Bean
+    public CircuitBreaker reviewsCircuitBreaker(CircuitBreakerRegistry registry, ResilienceProperties properties) {
+        return circuitBreaker(registry, "reviews", properties.getReviews());
+    }
+
+    @Bean
+    public Bulkhead moviesInfoBulkhead(BulkheadRegistry registry, ResilienceProperties properties) {
+        return bulkhead(registry, "moviesInfo", properties.getMoviesInfo());
+    }
+
+    @Bean
+    public Bulkhead reviewsBulkhead(BulkheadRegistry registry, ResilienceProperties properties) {
+        return bulkhead(registry, "reviews", properties.getReviews());
+    }
+
+    @Bean
+    public RetryPolicy moviesInfoRetryPolicy(ResilienceProperties properties) {
+        return retryPolicy("moviesInfo", properties.getMoviesInfo(), MoviesInfoServerException.class::isInstance);
+    }
+
+    @Bean
+    public RetryPolicy reviewsRetryPolicy(ResilienceProperties properties) {
+        return retryPolicy("reviews", properties.getReviews(), ReviewsServerException.class::isInstance);
+    }
+
+    @Bean
+    public HedgePolicy moviesInfoHedgePolicy(ResilienceProperties properties) {
+        return hedgePolicy("moviesInfo", properties.getMoviesInfo());
+    }
+
+    @Bean
+    public HedgePolicy reviewsHedgePolicy(ResilienceProperties properties) {
+        return hedgePolicy("reviews", properties.getReviews());
+    }
+
+    private static CircuitBreaker circuitBreaker(CircuitBreakerRegistry registry, String name,
+                                                 ResilienceProperties.Policy policy) {
+        var config = CircuitBreakerConfig.custom()
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(policy.getSlidingWindowSize())
+                .minimumNumberOfCalls(policy.getMinimumNumberOfCalls())
+                .failureRateThreshold(policy.getFailureRateThreshold())
+                .slowCallDurationThreshold(policy.getSlowCallDurationThreshold())
+                .slowCallRateThreshold(policy.getSlowCallRateThreshold())
+                .waitDurationInOpenState(policy.getWaitDurationInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(policy.getPermittedNumberOfCallsInHalfOpenState())
+                .ignoreExceptions(MoviesInfoClientException.class, ReviewsClientException.class,
+                        WebClientResponseException.NotFound.class, BulkheadFullException.class,
+                        DeadlineExceededException.class)
+                .build();
+
+        var circuitBreaker = registry.circuitBreaker(name, config);
+        circuitBreaker.getEventPublisher().onStateTransition(event -> {
+            var transition = event.getStateTransition();
+            log.warn("Circuit breaker {} changed from {} to {}", name, transition.getFromState(), transition.getToState());
+            Counter.builder("movies.client.circuitbreaker.transitions")
+                    .description("State transitions of the circuit breaker of a downstream service")
+                    .tag("client", name)
+                    .tag("from", transition.getFromState().name())
+                    .tag("to", transition.getToState().name())
+                    .register(Metrics.globalRegistry)
+                    .increment();
+        });
+        return circuitBreaker;
+    }
+
+    private static Bulkhead bulkhead(BulkheadRegistry registry, String name, ResilienceProperties.Policy policy) {
+        var config = BulkheadConfig.custom()
+                .maxConcurrentCalls(policy.getMaxConcurrentCalls())
+                // a full bulkhead fails the call instead of parking it
+                .maxWaitDuration(Duration.ZERO)
+                .build();
+
+        return registry.bulkhead(name, config);
+    }
+
+    private static RetryPolicy retryPolicy(String name, ResilienceProperties.Policy policy,
+                                           Predicate<Throwable> retryable) {
+        var budget = new RetryBudget(policy.getRetryBudgetRatio(), policy.getMinRetriesPerSecond());
+        return new RetryPolicy(name, policy.getMaxRetries(), policy.getMinBackoff(), policy.getMaxBackoff(), budget,
+                retryable);
+    }
+
+    private static HedgePolicy hedgePolicy(String name, ResilienceProperties.Policy policy) {
+        // hedges are earned by the calls only, without a floor per second
+        var budget = new RetryBudget(policy.getHedgeBudgetRatio(), 0);
+        return new HedgePolicy(name, policy.isHedgeEnabled(), policy.getHedgePercentile(), policy.getMinHedgeDelay(),
+                budget);
+    }
+}
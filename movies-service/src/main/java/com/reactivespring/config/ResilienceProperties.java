@@ -0,0 +1,47 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Circuit breaker, bulkhead, retries and hedging of each downstream service, bound from {@code restClient.resilience}.
+ */
+@Data
+@ConfigurationProperties(prefix = "rest-client.resilience")
+public class ResilienceProperties {
+
+    private Policy moviesInfo = new Policy();
+    private Policy reviews = new Policy();
+
+    @Data
+    public static class Policy {
+
+        // the breaker looks at the outcome of the last slidingWindowSize calls
+        private int slidingWindowSize = 20;
+        private int minimumNumberOfCalls = 10;
+        private float failureRateThreshold = 50;
+        // calls slower than slowCallDurationThreshold count towards slowCallRateThreshold even if they succeed
+        private Duration slowCallDurationThreshold = Duration.ofSeconds(2);
+        private float slowCallRateThreshold = 50;
+        private Duration waitDurationInOpenState = Duration.ofSeconds(10);
+        // probe calls let through once the open state has expired
+        private int permittedNumberOfCallsInHalfOpenState = 3;
+        // calls in flight to the service, the ones above this are rejected right away
+        private int maxConcurrentCalls = 40;
+        // failed calls are retried after a random delay below a bound doubling from minBackoff up to maxBackoff
+        private int maxRetries = 3;
+        private Duration minBackoff = Duration.ofMillis(100);
+        private Duration maxBackoff = Duration.ofSeconds(1);
+        // retries allowed on top of the calls, as a share of them plus a floor for clients with little traffic
+        private double retryBudgetRatio = 0.1;
+        private int minRetriesPerSecond = 10;
+        // a second attempt of a single movie lookup goes out once the first has taken longer than hedgePercentile
+        // of the recent lookups (at least minHedgeDelay), for at most hedgeBudgetRatio of the lookups
+        private boolean hedgeEnabled = false;
+        private double hedgePercentile = 0.95;
+        private Duration minHedgeDelay = Duration.ofMillis(10);
+        private double hedgeBudgetRatio = 0.05;
+    }
+}
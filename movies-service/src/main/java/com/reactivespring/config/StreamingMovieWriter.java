@@ -0,0 +1,92 @@
+package com.reactivespring.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.StreamingMovie;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.http.codec.HttpMessageWriter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a {@link StreamingMovie} as the JSON of a {@code Movie}, one review at a time. Only the review being
+ * encoded is held in memory, whatever the size of the list.
+ * <p>
+ * Nothing is written until the first review, or the end of the reviews, has arrived. A reviews call that fails
+ * right away still gets an error status instead of a response cut short.
+ */
+class StreamingMovieWriter implements HttpMessageWriter<StreamingMovie> {
+
+    private static final byte[] SEPARATOR = {','};
+    private static final byte[] END = "]}".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper;
+
+    StreamingMovieWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public List<MediaType> getWritableMediaTypes() {
+        return List.of(MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    public boolean canWrite(ResolvableType elementType, MediaType mediaType) {
+        return StreamingMovie.class.isAssignableFrom(elementType.toClass())
+                && (mediaType == null || MediaType.APPLICATION_JSON.isCompatibleWith(mediaType));
+    }
+
+    @Override
+    public Mono<Void> write(Publisher<? extends StreamingMovie> inputStream, ResolvableType elementType,
+                            MediaType mediaType, ReactiveHttpOutputMessage message, Map<String, Object> hints) {
+        message.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        var bufferFactory = message.bufferFactory();
+        return message.writeWith(Mono.from(inputStream).flatMapMany(movie -> encode(movie, bufferFactory)));
+    }
+
+    private Flux<DataBuffer> encode(StreamingMovie movie, DataBufferFactory bufferFactory) {
+        var start = ("{\"movieInfo\":" + json(movie.getMovieInfo()) + ",\"reviewList\":[").getBytes(StandardCharsets.UTF_8);
+
+        return movie.getReviewList()
+                .index()
+                .map(review -> buffer(bufferFactory, review.getT1() == 0 ? start : SEPARATOR,
+                        jsonBytes(review.getT2())))
+                .switchIfEmpty(Mono.fromSupplier(() -> buffer(bufferFactory, start)))
+                .concatWith(Mono.fromSupplier(() -> buffer(bufferFactory, END)));
+    }
+
+    private String json(Object value) {
+        return new String(jsonBytes(value), StandardCharsets.UTF_8);
+    }
+
+    private byte[] jsonBytes(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException ex) {
+            throw new EncodingException("JSON encoding error: " + ex.getOriginalMessage(), ex);
+        }
+    }
+
+    private static DataBuffer buffer(DataBufferFactory bufferFactory, byte[]... parts) {
+        var length = 0;
+        for (var part : parts) {
+            length += part.length;
+        }
+        var buffer = bufferFactory.allocateBuffer(length);
+        for (var part : parts) {
+            buffer.write(part);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,98 @@
+package com.reactivespring.config;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.netty.resolver.AddressResolverGroup;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.ConnectionObserver;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.transport.TransportConfig;
+
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Records how long requests wait for a connection of the pool, which Reactor Netty's own pool gauges don't
+ * report, and sizes the HTTP/2 pool derived from it. Everything else is delegated.
+ */
+class TimedConnectionProvider implements ConnectionProvider {
+
+    private final ConnectionProvider delegate;
+    private final int http2MaxConnections;
+
+    private final Timer acquired;
+    private final Timer failed;
+
+    TimedConnectionProvider(ConnectionProvider delegate, String client, int http2MaxConnections) {
+        this.delegate = delegate;
+        this.http2MaxConnections = http2MaxConnections;
+        this.acquired = acquireTimer(client, "success");
+        this.failed = acquireTimer(client, "error");
+    }
+
+    @Override
+    public Mono<? extends Connection> acquire(TransportConfig config, ConnectionObserver connectionObserver,
+                                              Supplier<? extends SocketAddress> remoteAddress,
+                                              AddressResolverGroup<?> resolverGroup) {
+        return Mono.defer(() -> {
+            var sample = Timer.start(Metrics.globalRegistry);
+            return delegate.acquire(config, connectionObserver, remoteAddress, resolverGroup)
+                    .doOnSuccess(connection -> sample.stop(acquired))
+                    .doOnError(ex -> sample.stop(failed));
+        });
+    }
+
+    @Override
+    public void disposeWhen(SocketAddress address) {
+        delegate.disposeWhen(address);
+    }
+
+    @Override
+    public void dispose() {
+        delegate.dispose();
+    }
+
+    @Override
+    public Mono<Void> disposeLater() {
+        return delegate.disposeLater();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return delegate.isDisposed();
+    }
+
+    @Override
+    public int maxConnections() {
+        return delegate.maxConnections();
+    }
+
+    @Override
+    public Map<SocketAddress, Integer> maxConnectionsPerHost() {
+        return delegate.maxConnectionsPerHost();
+    }
+
+    @Override
+    public Builder mutate() {
+        // Reactor Netty derives the HTTP/2 pool from these settings, which would open as many connections as
+        // the HTTP/1.1 pool before multiplexing streams on them
+        var builder = delegate.mutate();
+        builder.maxConnections(http2MaxConnections);
+        return builder;
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    private static Timer acquireTimer(String client, String outcome) {
+        return Timer.builder("movies.client.pool.acquire")
+                .description("Time spent waiting for a pooled connection")
+                .tag("client", client)
+                .tag("outcome", outcome)
+                .register(Metrics.globalRegistry);
+    }
+}
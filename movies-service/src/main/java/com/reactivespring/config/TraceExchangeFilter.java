@@ -0,0 +1,26 @@
+package com.reactivespring.config;
+
+import com.reactivespring.trace.Trace;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Sends the span a call is made in as the {@link Trace#TRACEPARENT_HEADER}, with the sampled flag of the request,
+ * so the downstream service records spans for the sampled ones as its children and none for the others. Calls
+ * made outside a request, like cache refreshes, go without and the downstream service samples them on its own.
+ */
+class TraceExchangeFilter implements ExchangeFilterFunction {
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual(context -> Trace.from(context)
+                .flatMap(Trace::toTraceparent)
+                .map(traceparent -> next.exchange(ClientRequest.from(request)
+                        .header(Trace.TRACEPARENT_HEADER, traceparent)
+                        .build()))
+                .orElseGet(() -> next.exchange(request)));
+    }
+}
@@ -1,14 +1,98 @@
 package com.reactivespring.config;
 
+import io.netty.channel.ChannelOption;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+/**
+ * One WebClient per downstream service, each with its own connection pool so a slow service can't starve the
+ * other one of connections. Pool gauges are published as {@code reactor.netty.connection.provider.*} tagged
+ * with the pool name, acquire times as {@code movies.client.pool.acquire}.
+ * <p>
+ * Over h2c requests are multiplexed as streams on at most {@code http2MaxConnections} connections, kept by Reactor
+ * Netty in an HTTP/2 pool named {@code http2.<pool>}, HTTP/1.1 connections stay in the configured pool.
+ * <p>
+ * Calls made on behalf of a request with a deadline carry it downstream and wait for the response only as long
+ * as the deadline allows, see {@link DeadlineExchangeFilter}. With {@code instances} configured the calls are spread
+ * over them, see {@link LoadBalancingExchangeFilter}. Responses come as Smile from services that offer it, see
+ * {@link SmileExchangeFilter}, and compressed when {@code compress} is on and the service compresses them. Calls of
+ * sampled requests carry their trace, see {@link TraceExchangeFilter}.
+ */
 @Configuration
+@EnableConfigurationProperties(ConnectionPoolProperties.class)
 public class WebClientConfiguration {
 
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider moviesInfoConnectionProvider(ConnectionPoolProperties properties) {
+        return connectionProvider("moviesInfo", properties.getMoviesInfo());
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider reviewsConnectionProvider(ConnectionPoolProperties properties) {
+        return connectionProvider("reviews", properties.getReviews());
+    }
+
+    @Bean
+    public WebClient moviesInfoWebClient(WebClient.Builder builder, ConnectionPoolProperties properties) {
+        return webClient(builder, "moviesInfo", moviesInfoConnectionProvider(properties), properties.getMoviesInfo());
+    }
+
+    @Bean
+    public WebClient reviewsWebClient(WebClient.Builder builder, ConnectionPoolProperties properties) {
+        return webClient(builder, "reviews", reviewsConnectionProvider(properties), properties.getReviews());
+    }
+
+    /**
+     * For the change feeds, which hold a connection open and may be quiet for long, so they get neither a pooled
+     * connection nor a response timeout.
+     */
     @Bean
-    public WebClient webClient(WebClient.Builder builder) {
-        return builder.build(); 
+    public WebClient changeFeedWebClient(WebClient.Builder builder) {
+        return builder
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(ConnectionProvider.newConnection())))
+                .build();
+    }
+
+    private static ConnectionProvider connectionProvider(String name, ConnectionPoolProperties.Pool pool) {
+        var connectionProvider = ConnectionProvider.builder(name)
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxLifeTime(pool.getMaxLifeTime())
+                .evictInBackground(pool.getEvictInBackground())
+                .metrics(true)
+                .build();
+
+        return new TimedConnectionProvider(connectionProvider, name, pool.getHttp2MaxConnections());
+    }
+
+    private static WebClient webClient(WebClient.Builder builder, String name, ConnectionProvider connectionProvider,
+                                       ConnectionPoolProperties.Pool pool) {
+        var httpClient = HttpClient.create(connectionProvider)
+                .protocol(pool.getProtocols().toArray(HttpProtocol[]::new))
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) pool.getConnectTimeout().toMillis())
+                .responseTimeout(pool.getResponseTimeout())
+                .compress(pool.isCompress());
+
+        builder.clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize((int) pool.getMaxInMemorySize().toBytes()));
+        if (!pool.getInstances().isEmpty()) {
+            // outermost, so the instance sees a failed attempt the way the client does
+            builder.filter(new LoadBalancingExchangeFilter(name, pool.getInstances(), pool));
+        }
+        if (pool.isSmile()) {
+            builder.filter(new SmileExchangeFilter());
+        }
+        return builder
+                .filter(new DeadlineExchangeFilter(pool.getResponseTimeout()))
+                .filter(new TraceExchangeFilter())
+                .build();
     }
 }
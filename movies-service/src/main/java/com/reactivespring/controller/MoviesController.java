@@ -1,35 +1,157 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.cache.ReviewsCache;
 import com.reactivespring.client.MovieInfoRestClient;
 import com.reactivespring.client.ReviewRestClient;
 import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieBatchResult;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieSummary;
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
+import com.reactivespring.domain.StreamingMovie;
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.trace.Tracer;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 @RestController
 @RequestMapping("/v1/movies")
 public class MoviesController {
 
     private MovieInfoRestClient movieInfoRestClient;
+    private MovieInfoCache movieInfoCache;
     private ReviewRestClient reviewRestClient;
+    private ReviewsCache reviewsCache;
+    private Tracer tracer;
+
+    @Value("${movies.batch.concurrency:8}")
+    private int batchConcurrency;
+
+    @Value("${movies.batch.chunkSize:100}")
+    private int batchChunkSize;
+
+    @Value("${movies.batch.maxIds:1000}")
+    private int batchMaxIds;
 
-    public MoviesController(MovieInfoRestClient movieInfoRestClient, ReviewRestClient reviewRestClient) {
+    public MoviesController(MovieInfoRestClient movieInfoRestClient, MovieInfoCache movieInfoCache,
+                            ReviewRestClient reviewRestClient, ReviewsCache reviewsCache, Tracer tracer) {
         this.movieInfoRestClient = movieInfoRestClient;
+        this.movieInfoCache = movieInfoCache;
         this.reviewRestClient = reviewRestClient;
+        this.reviewsCache = reviewsCache;
+        this.tracer = tracer;
     }
 
     @GetMapping("/{id}")
     public Mono<Movie> retriveMovieById(@PathVariable("id") String movieId) {
 
-        return movieInfoRestClient.retriveMovieInfo(movieId)
-                .flatMap(movieInfo -> {
-                    var reviewListMono = reviewRestClient.retriveReviews(movieId).collectList();
-                    return reviewListMono.map(reviews -> new Movie(movieInfo, reviews));
-                });
+        // both downstream calls only need the path id, so subscribe to them together; zip cancels the
+        // in-flight reviews call as soon as the movie info call fails (e.g. with a 404)
+        var movieInfoMono = movieInfoCache.retriveMovieInfo(movieId)
+                .transform(tracer.mono("movieInfo"));
+        var reviewListMono = reviewsCache.retriveReviews(movieId)
+                .transform(tracer.mono("reviews"))
+                .onErrorResume(MoviesController::isRejected, ex -> Mono.just(List.of()));
+
+        return Mono.zip(movieInfoMono, reviewListMono, Movie::new);
+
+    }
+
+    @GetMapping(value = "/{id}", params = "streamReviews=true")
+    public Mono<StreamingMovie> streamMovieById(@PathVariable("id") String movieId) {
+
+        // for movies with too many reviews to hold in memory, reviews go from the reviews service to the client
+        // one at a time, without the reviews cache; they are only asked for once the movie info is known
+        return movieInfoCache.retriveMovieInfo(movieId)
+                .transform(tracer.mono("movieInfo"))
+                .map(movieInfo -> new StreamingMovie(movieInfo, reviewRestClient.streamReviews(movieId)
+                        .transform(tracer.flux("reviews.stream"))
+                        .onErrorResume(MoviesController::isRejected, ex -> Flux.empty())));
+    }
+
+    @GetMapping("/{id}/summary")
+    public Mono<MovieSummary> retriveMovieSummaryById(@PathVariable("id") String movieId) {
+
+        // for clients that only show the rating, the review aggregates are a single small document
+        return Mono.zip(movieInfoCache.retriveMovieInfo(movieId).transform(tracer.mono("movieInfo")),
+                reviewRestClient.retriveReviewSummary(movieId)
+                        .transform(tracer.mono("reviewSummary"))
+                        .onErrorResume(MoviesController::isRejected, ex -> Mono.just(ReviewSummary.empty(movieId))),
+                MovieSummary::new);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieBatchResult> retriveMoviesByIds(@RequestParam("ids") List<String> movieIds) {
+
+        if (movieIds.size() > batchMaxIds) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "At most " + batchMaxIds + " movieIds can be requested at once, got " + movieIds.size()));
+        }
+
+        // ids are resolved in chunks of batchChunkSize with one bulk call per downstream service, at most
+        // batchConcurrency chunks are in flight and results are streamed as each chunk completes
+        return Flux.fromIterable(movieIds)
+                .distinct()
+                .buffer(batchChunkSize)
+                .flatMap(this::retriveMovieChunk, batchConcurrency);
+    }
+
+    private Flux<MovieBatchResult> retriveMovieChunk(List<String> movieIds) {
+
+        var movieInfosMono = movieInfoRestClient.retriveMovieInfos(movieIds)
+                .transform(tracer.flux("movieInfos.batch"))
+                .collectMap(MovieInfo::getMovieInfoId);
+        var reviewsMono = reviewRestClient.retriveReviews(movieIds)
+                .transform(tracer.mono("reviews.batch"))
+                .onErrorResume(MoviesController::isRejected, ex -> Mono.just(Map.of()));
+
+        return Mono.zip(movieInfosMono, reviewsMono)
+                .flatMapIterable(tuple -> movieIds.stream()
+                        .map(movieId -> toResult(movieId, tuple.getT1().get(movieId), tuple.getT2()))
+                        .collect(Collectors.toList()))
+                .onErrorResume(ex -> Flux.fromIterable(movieIds).map(movieId -> toFailure(movieId, ex)));
+    }
+
+    private MovieBatchResult toResult(String movieId, MovieInfo movieInfo, Map<String, List<Review>> reviews) {
+        if (movieInfo == null) {
+            return MovieBatchResult.failure(movieId, HttpStatus.NOT_FOUND.value(), "No Movie found for given movieId : " + movieId);
+        }
+        return MovieBatchResult.success(movieId, new Movie(movieInfo, reviews.getOrDefault(movieId, List.of())));
+    }
+
+    // calls the circuit breaker or the bulkhead of the service didn't let through, while reviews are rejected
+    // movies are served without their reviews instead of failing, and the empty list never ends up in the cache
+    private static boolean isRejected(Throwable ex) {
+        return ex instanceof CallNotPermittedException || ex instanceof BulkheadFullException;
+    }
 
+    private MovieBatchResult toFailure(String movieId, Throwable ex) {
+        // same status mapping as GlobalExceptionHandler, reported per id instead of failing the whole batch
+        if (ex instanceof MoviesInfoClientException) {
+            return MovieBatchResult.failure(movieId, ((MoviesInfoClientException) ex).getStatusCode(), ex.getMessage());
+        }
+        if (ex instanceof DeadlineExceededException) {
+            return MovieBatchResult.failure(movieId, HttpStatus.GATEWAY_TIMEOUT.value(), ex.getMessage());
+        }
+        return MovieBatchResult.failure(movieId, HttpStatus.SERVICE_UNAVAILABLE.value(), ex.getMessage());
     }
 
 }
@@ -0,0 +1,27 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of the batch response, either the aggregated movie or the failure for that id.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieBatchResult {
+
+    private String movieId;
+    private Movie movie;
+    private Integer status;
+    private String errorMessage;
+
+    public static MovieBatchResult success(String movieId, Movie movie) {
+        return new MovieBatchResult(movieId, movie, 200, null);
+    }
+
+    public static MovieBatchResult failure(String movieId, Integer status, String errorMessage) {
+        return new MovieBatchResult(movieId, null, status, errorMessage);
+    }
+}
@@ -0,0 +1,33 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewSummary {
+
+    private Long movieInfoId;
+    private long count;
+    private long ratingCount;
+    private double ratingSum;
+    private Double averageRating;
+    // number of ratings per whole star
+    private Map<String, Long> histogram;
+
+    // stands in for the summary while the reviews service can't be asked, a movie id it can't parse has no number
+    public static ReviewSummary empty(String movieId) {
+        Long movieInfoId = null;
+        try {
+            movieInfoId = Long.valueOf(movieId);
+        } catch (NumberFormatException ex) {
+            // left without one
+        }
+        return new ReviewSummary(movieInfoId, 0, 0, 0, null, new TreeMap<>());
+    }
+}
@@ -0,0 +1,17 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import reactor.core.publisher.Flux;
+
+/**
+ * {@link Movie} whose reviews are written to the response as they arrive instead of being collected first, same
+ * JSON as a {@link Movie}.
+ */
+@Data
+@AllArgsConstructor
+public class StreamingMovie {
+
+    private MovieInfo movieInfo;
+    private Flux<Review> reviewList;
+}
@@ -1,5 +1,6 @@
 package com.reactivespring.exceptionhandler;
 
+import com.reactivespring.exception.DeadlineExceededException;
 import com.reactivespring.exception.MoviesInfoClientException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
@@ -7,6 +8,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.server.ResponseStatusException;
 
 @ControllerAdvice
 @Slf4j
@@ -18,6 +20,18 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(moviesInfoClientException.getStatusCode()).body(moviesInfoClientException.getMessage());
     }
 
+    @ExceptionHandler(DeadlineExceededException.class)
+    public ResponseEntity handleDeadlineExceededException(DeadlineExceededException deadlineExceededException) {
+        log.error("Exception cought in handleDeadlineExceededException : {}", deadlineExceededException.getMessage() );
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(deadlineExceededException.getMessage());
+    }
+
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity handleResponseStatusException(ResponseStatusException responseStatusException) {
+        log.error("Exception cought in handleResponseStatusException : {}", responseStatusException.getMessage() );
+        return ResponseEntity.status(responseStatusException.getStatus()).body(responseStatusException.getReason());
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity handleRuntimeException(RuntimeException rex) {
         log.error("Exception cought in handleMoviesException : {}", rex.getMessage() );
@@ -0,0 +1,113 @@
+package com.reactivespring.benchmark;
+
+import com.reactivespring.config.WebClientConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.web.reactive.function.client.WebClientAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sockets used and latency percentiles of the movies-info WebClient over HTTP/1.1 and over h2c, against a server
+ * answering after a fixed delay. Run with {@code ./gradlew benchmark}, the numbers are printed to stdout.
+ */
+@Tag("benchmark")
+class HttpProtocolBenchmark {
+
+    private static final int REQUESTS = 5_000;
+    private static final int CONCURRENCY = 200;
+    private static final Duration SERVER_LATENCY = Duration.ofMillis(20);
+
+    // streams of one HTTP/2 connection share its client address
+    private final Set<InetSocketAddress> clientAddresses = ConcurrentHashMap.newKeySet();
+
+    private DisposableServer server;
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(WebClientAutoConfiguration.class))
+            .withUserConfiguration(WebClientConfiguration.class)
+            .withPropertyValues("restClient.pools.moviesInfo.maxConnections=50",
+                    "restClient.pools.moviesInfo.pendingAcquireMaxCount=-1",
+                    "restClient.pools.moviesInfo.pendingAcquireTimeout=30s",
+                    "restClient.pools.moviesInfo.responseTimeout=30s");
+
+    @BeforeEach
+    void setUp() {
+        server = HttpServer.create()
+                .port(0)
+                .protocol(HttpProtocol.H2C, HttpProtocol.HTTP11)
+                .handle((request, response) -> {
+                    clientAddresses.add(request.remoteAddress());
+                    return response.sendString(Mono.just("{\"movieInfoId\":\"1\"}").delayElement(SERVER_LATENCY));
+                })
+                .bindNow();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.disposeNow();
+    }
+
+    @Test
+    void http11() {
+        run("http11");
+    }
+
+    @Test
+    void h2c() {
+        run("h2c");
+    }
+
+    private void run(String protocols) {
+        contextRunner.withPropertyValues("restClient.pools.moviesInfo.protocols=" + protocols).run(context -> {
+            var webClient = context.getBean("moviesInfoWebClient", WebClient.class);
+
+            // warm up connections and JIT, then measure on a clean slate
+            calls(webClient, REQUESTS / 5);
+            clientAddresses.clear();
+
+            var latencies = calls(webClient, REQUESTS);
+            Arrays.sort(latencies);
+
+            System.out.printf("%-7s sockets=%-3d p50=%.1fms p99=%.1fms p99.9=%.1fms max=%.1fms%n", protocols,
+                    clientAddresses.size(), percentile(latencies, 0.5), percentile(latencies, 0.99),
+                    percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e6);
+        });
+    }
+
+    private long[] calls(WebClient webClient, int requests) {
+        var latencies = new long[requests];
+        var uri = "http://localhost:" + server.port() + "/v1/movieInfos/1";
+
+        Flux.range(0, requests)
+                .flatMap(i -> Mono.defer(() -> {
+                    var start = System.nanoTime();
+                    return webClient.get()
+                            .uri(uri)
+                            .retrieve()
+                            .bodyToMono(String.class)
+                            .doOnSuccess(body -> latencies[i] = System.nanoTime() - start);
+                }), CONCURRENCY)
+                .blockLast(Duration.ofMinutes(2));
+
+        return latencies;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.ceil(percentile * sorted.length) - 1] / 1e6;
+    }
+}
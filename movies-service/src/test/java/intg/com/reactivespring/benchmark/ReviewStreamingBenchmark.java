@@ -0,0 +1,206 @@
+package com.reactivespring.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.reactivespring.config.CodecConfiguration;
+import com.reactivespring.config.WebClientConfiguration;
+import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.StreamingMovie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.web.reactive.function.client.WebClientAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Bytes allocated for the reviews of a movie with {@code REVIEWS} reviews, collected into a list as for the cached
+ * movie and streamed one at a time. Decoding is measured on the reviews WebClient against a JSON array and NDJSON,
+ * with the heap still held by the result; writing compares the {@link Movie} Jackson writes in one buffer with the
+ * {@link StreamingMovie} writer, with the largest buffer each one writes. Run with {@code ./gradlew benchmark}, the
+ * numbers are printed to stdout.
+ */
+@Tag("benchmark")
+class ReviewStreamingBenchmark {
+
+    private static final int REVIEWS = 50_000;
+    private static final int RUNS = 5;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(WebClientAutoConfiguration.class))
+            .withUserConfiguration(WebClientConfiguration.class)
+            .withPropertyValues("restClient.pools.reviews.responseTimeout=30s",
+                    // enough for the whole array when it's decoded at once
+                    "restClient.pools.reviews.maxInMemorySize=64MB");
+
+    private final List<Review> reviews = IntStream.range(0, REVIEWS)
+            .mapToObj(i -> new Review(String.valueOf(i), 1L, "Review number " + i + " of a movie with many reviews", 7.5))
+            .collect(Collectors.toList());
+
+    private final MovieInfo movieInfo = new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale"),
+            LocalDate.parse("2005-06-15"));
+
+    private DisposableServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        var json = OBJECT_MAPPER.writeValueAsString(reviews);
+        var ndjson = reviews.stream()
+                .map(this::json)
+                .collect(Collectors.joining("\n", "", "\n"));
+
+        server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes
+                        .get("/v1/reviews/json", (request, response) -> response
+                                .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                                .sendString(Mono.just(json)))
+                        .get("/v1/reviews/ndjson", (request, response) -> response
+                                .header("Content-Type", MediaType.APPLICATION_NDJSON_VALUE)
+                                .sendString(Mono.just(ndjson))))
+                .bindNow();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.disposeNow();
+    }
+
+    @Test
+    void decoding() {
+        contextRunner.run(context -> {
+            var webClient = context.getBean("reviewsWebClient", WebClient.class);
+
+            for (var format : List.of("json", "ndjson")) {
+                Supplier<Flux<Review>> call = () -> webClient.get()
+                        .uri("http://localhost:" + server.port() + "/v1/reviews/" + format)
+                        .retrieve()
+                        .bodyToFlux(Review.class);
+
+                measure("decode " + format + " collected", () -> call.get().collectList().block());
+                measure("decode " + format + " streamed", () -> call.get().count().block());
+            }
+        });
+    }
+
+    @Test
+    void writing() {
+        var configurer = ServerCodecConfigurer.create();
+        new CodecConfiguration(OBJECT_MAPPER).configureHttpMessageCodecs(configurer);
+        var movieWriter = writer(configurer, Movie.class);
+        var streamingWriter = writer(configurer, StreamingMovie.class);
+
+        var largestBuffer = new AtomicInteger();
+        measure("write movie collected", () -> write(movieWriter, Movie.class, largestBuffer,
+                Flux.fromIterable(reviews).collectList().map(list -> new Movie(movieInfo, list))));
+        System.out.printf("%-30s largest buffer=%dB%n", "", largestBuffer.get());
+
+        largestBuffer.set(0);
+        measure("write movie streamed", () -> write(streamingWriter, StreamingMovie.class, largestBuffer,
+                Mono.just(new StreamingMovie(movieInfo, Flux.fromIterable(reviews)))));
+        System.out.printf("%-30s largest buffer=%dB%n", "", largestBuffer.get());
+    }
+
+    private static <T> Object write(HttpMessageWriter<T> writer, Class<T> type, AtomicInteger largestBuffer, Mono<T> movie) {
+        var response = new MockServerHttpResponse();
+        var bytes = new AtomicLong();
+        // buffers are released as they are written, as they would be once on the socket
+        response.setWriteHandler(body -> body
+                .doOnNext(buffer -> {
+                    bytes.addAndGet(buffer.readableByteCount());
+                    largestBuffer.accumulateAndGet(buffer.readableByteCount(), Math::max);
+                    DataBufferUtils.release(buffer);
+                })
+                .then());
+
+        writer.write(movie, ResolvableType.forClass(type), MediaType.APPLICATION_JSON, response, Map.of())
+                .block(Duration.ofMinutes(1));
+        return bytes.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> HttpMessageWriter<T> writer(ServerCodecConfigurer configurer, Class<T> type) {
+        return (HttpMessageWriter<T>) configurer.getWriters().stream()
+                .filter(writer -> writer.canWrite(ResolvableType.forClass(type), MediaType.APPLICATION_JSON))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static void measure(String name, Supplier<Object> run) {
+        // warm up JIT and connections, then measure on a clean slate
+        run.get();
+
+        var allocated = 0L;
+        var retained = 0L;
+        for (int i = 0; i < RUNS; i++) {
+            var bytes = measureOnce(run);
+            allocated += bytes[0];
+            retained += bytes[1];
+        }
+
+        System.out.printf("%-30s allocated=%dMB retained=%dKB%n", name,
+                allocated / RUNS / (1024 * 1024), Math.max(0, retained / RUNS) / 1024);
+    }
+
+    // the result is only reachable from this frame, so it's gone again before the next run measures its baseline
+    private static long[] measureOnce(Supplier<Object> run) {
+        var heapBefore = usedHeapAfterGc();
+        var allocatedBefore = allocatedBytes();
+        var result = run.get();
+        var allocated = allocatedBytes() - allocatedBefore;
+        var retained = usedHeapAfterGc() - heapBefore;
+        Reference.reachabilityFence(result);
+        return new long[]{allocated, retained};
+    }
+
+    private static long allocatedBytes() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var allocated = 0L;
+        // decoding and writing happen on event loop threads as much as on the calling one
+        for (var bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            allocated += Math.max(0, bytes);
+        }
+        return allocated;
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private String json(Review review) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(review);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
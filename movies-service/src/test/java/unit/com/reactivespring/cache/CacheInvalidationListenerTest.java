@@ -0,0 +1,154 @@
+package com.reactivespring.cache;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class CacheInvalidationListenerTest {
+
+    WireMockServer wireMockServer = new WireMockServer(options().dynamicPort());
+
+    MovieInfoCache movieInfoCache = mock(MovieInfoCache.class);
+    ReviewsCache reviewsCache = mock(ReviewsCache.class);
+
+    CacheInvalidationListener listener;
+
+    @BeforeEach
+    void setUp() {
+        wireMockServer.start();
+        listener = listener(WebClient.create());
+    }
+
+    private CacheInvalidationListener listener(WebClient webClient) {
+        var listener = new CacheInvalidationListener(webClient, movieInfoCache, reviewsCache);
+        ReflectionTestUtils.setField(listener, "moviesInfoUrl", wireMockServer.baseUrl() + "/v1/movieInfos");
+        ReflectionTestUtils.setField(listener, "reviewUrl", wireMockServer.baseUrl() + "/v1/reviews");
+        ReflectionTestUtils.setField(listener, "minBackoff", Duration.ofMillis(50));
+        ReflectionTestUtils.setField(listener, "maxBackoff", Duration.ofMillis(100));
+        return listener;
+    }
+
+    @AfterEach
+    void tearDown() {
+        listener.unsubscribe();
+        wireMockServer.stop();
+    }
+
+    @Test
+    void eventsEvictById() {
+        // the feeds stay open after their event like the real ones, a stub that completes would be reconnected to
+        // and deliver the event again
+        listener = listener(WebClient.builder()
+                .exchangeFunction(request -> Mono.just(request.url().getPath().startsWith("/v1/movieInfos")
+                        ? openFeed("application/x-ndjson", "{\"movieInfoId\":\"1\",\"name\":\"Batman Begins\"}\n")
+                        : openFeed("text/event-stream",
+                                "id:token-1\nevent:update\ndata:{\"reviewId\":\"1\",\"movieInfoId\":2,\"rating\":9.0}\n\n")))
+                .build());
+
+        listener.subscribe();
+
+        verify(movieInfoCache, timeout(10000)).invalidate("1");
+        verify(reviewsCache, timeout(10000)).invalidate("2");
+        // connected once, never reconnected
+        verify(movieInfoCache, times(1)).invalidateAll();
+        verify(reviewsCache, times(1)).invalidateAll();
+    }
+
+    @Test
+    void reconnectClearsCache() {
+        wireMockServer.stubFor(get(urlEqualTo("/v1/movieInfos/stream"))
+                .willReturn(aResponse().withStatus(503)));
+
+        wireMockServer.stubFor(get(urlEqualTo("/v1/reviews/stream"))
+                .willReturn(aResponse().withStatus(503)));
+
+        listener.subscribe();
+
+        verify(movieInfoCache, timeout(10000).atLeast(2)).invalidateAll();
+        verify(reviewsCache, timeout(10000).atLeast(2)).invalidateAll();
+    }
+
+    @Test
+    void reviewsFeedResumesFromLastEventId() {
+        wireMockServer.stubFor(get(urlEqualTo("/v1/movieInfos/stream"))
+                .willReturn(aResponse().withStatus(503)));
+
+        wireMockServer.stubFor(get(urlEqualTo("/v1/reviews/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "text/event-stream")
+                        .withBody("id:token-1\nevent:insert\ndata:{\"reviewId\":\"1\",\"movieInfoId\":2,\"rating\":9.0}\n\n")));
+
+        listener.subscribe();
+
+        verify(reviewsCache, timeout(10000).atLeast(2)).invalidate("2");
+        wireMockServer.verify(getRequestedFor(urlEqualTo("/v1/reviews/stream"))
+                .withHeader("Last-Event-ID", equalTo("token-1")));
+        // resuming doesn't lose events, only the first connect clears the cache
+        verify(reviewsCache, times(1)).invalidateAll();
+    }
+
+    @Test
+    void reviewsFeedDeleteEvictsItsMovie() {
+        listener = listener(WebClient.builder()
+                .exchangeFunction(request -> Mono.just(request.url().getPath().startsWith("/v1/movieInfos")
+                        ? openFeed("application/x-ndjson", "")
+                        : openFeed("text/event-stream",
+                                "id:token-1\nevent:delete\ndata:{\"reviewId\":\"1\",\"movieInfoId\":2}\n\n")))
+                .build());
+
+        listener.subscribe();
+
+        verify(reviewsCache, timeout(10000)).invalidate("2");
+        // only on connect
+        verify(reviewsCache, times(1)).invalidateAll();
+    }
+
+    @Test
+    void reviewsFeedDeleteAndResetClearCache() {
+        wireMockServer.stubFor(get(urlEqualTo("/v1/movieInfos/stream"))
+                .willReturn(aResponse().withStatus(503)));
+
+        wireMockServer.stubFor(get(urlEqualTo("/v1/reviews/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "text/event-stream")
+                        .withBody("event:reset\n\n"
+                                + "id:token-1\nevent:delete\ndata:{\"reviewId\":\"1\"}\n\n")));
+
+        listener.subscribe();
+
+        // first connect, then the reset and the delete
+        verify(reviewsCache, timeout(10000).atLeast(3)).invalidateAll();
+    }
+
+    private static ClientResponse openFeed(String contentType, String events) {
+        var buffer = DefaultDataBufferFactory.sharedInstance.wrap(events.getBytes(StandardCharsets.UTF_8));
+        return ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, contentType)
+                .body(Flux.<DataBuffer>just(buffer).concatWith(Flux.never()))
+                .build();
+    }
+}
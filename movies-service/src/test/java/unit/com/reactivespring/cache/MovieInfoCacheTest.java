@@ -0,0 +1,94 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.client.MovieInfoRestClient;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.MoviesInfoServerException;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MovieInfoCacheTest {
+
+    MovieInfoRestClient movieInfoRestClient = mock(MovieInfoRestClient.class);
+
+    @Test
+    void hitDoesNotCallDownstream() {
+        var cache = new MovieInfoCache(movieInfoRestClient, 100, Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ofSeconds(30), Duration.ofSeconds(5));
+        when(movieInfoRestClient.retriveMovieInfo("1")).thenReturn(Mono.just(movieInfo("Batman Begins")));
+
+        StepVerifier.create(cache.retriveMovieInfo("1")).expectNextCount(1).verifyComplete();
+        StepVerifier.create(cache.retriveMovieInfo("1")).expectNextCount(1).verifyComplete();
+
+        verify(movieInfoRestClient, times(1)).retriveMovieInfo("1");
+    }
+
+    @Test
+    void notFoundIsCached() {
+        var cache = new MovieInfoCache(movieInfoRestClient, 100, Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ofSeconds(30), Duration.ofSeconds(5));
+        when(movieInfoRestClient.retriveMovieInfo("1"))
+                .thenReturn(Mono.error(new MoviesInfoClientException("No Movie found for given movieId : 1", 404)));
+
+        StepVerifier.create(cache.retriveMovieInfo("1")).expectError(MoviesInfoClientException.class).verify();
+        StepVerifier.create(cache.retriveMovieInfo("1")).expectError(MoviesInfoClientException.class).verify();
+
+        verify(movieInfoRestClient, times(1)).retriveMovieInfo("1");
+    }
+
+    @Test
+    void serverErrorIsNotCached() {
+        var cache = new MovieInfoCache(movieInfoRestClient, 100, Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ofSeconds(30), Duration.ofSeconds(5));
+        when(movieInfoRestClient.retriveMovieInfo("1"))
+                .thenReturn(Mono.error(new MoviesInfoServerException("MovieInfo service error")));
+
+        StepVerifier.create(cache.retriveMovieInfo("1")).expectError(MoviesInfoServerException.class).verify();
+        StepVerifier.create(cache.retriveMovieInfo("1")).expectError(MoviesInfoServerException.class).verify();
+
+        verify(movieInfoRestClient, times(2)).retriveMovieInfo("1");
+    }
+
+    @Test
+    void serverErrorIsNotServedToTheNextCaller() {
+        var cache = new MovieInfoCache(movieInfoRestClient, 100, Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ofSeconds(30), Duration.ofSeconds(5));
+        when(movieInfoRestClient.retriveMovieInfo("1"))
+                .thenReturn(Mono.delay(Duration.ofMillis(10)).then(Mono.error(new MoviesInfoServerException("MovieInfo service error"))));
+
+        // asks again the moment the failure arrives, before Caffeine has dropped the failed load
+        StepVerifier.create(cache.retriveMovieInfo("1").onErrorResume(ex -> cache.retriveMovieInfo("1")))
+                .expectError(MoviesInfoServerException.class)
+                .verify();
+
+        verify(movieInfoRestClient, times(2)).retriveMovieInfo("1");
+    }
+
+    @Test
+    void staleEntryIsServedWhileRefreshing() throws InterruptedException {
+        var cache = new MovieInfoCache(movieInfoRestClient, 100, Duration.ofMinutes(10), Duration.ofMillis(50), Duration.ofSeconds(30), Duration.ofSeconds(5));
+        var cached = movieInfo("Batman Begins");
+        when(movieInfoRestClient.retriveMovieInfo("1")).thenReturn(Mono.just(cached));
+        // the refresh is conditional on the cached movie info
+        when(movieInfoRestClient.revalidateMovieInfo("1", cached)).thenReturn(Mono.just(movieInfo("The Dark Knight")));
+
+        StepVerifier.create(cache.retriveMovieInfo("1").map(MovieInfo::getName)).expectNext("Batman Begins").verifyComplete();
+
+        Thread.sleep(100);
+
+        // the stale value is returned immediately, the refreshed one on a later read
+        StepVerifier.create(cache.retriveMovieInfo("1").map(MovieInfo::getName)).expectNext("Batman Begins").verifyComplete();
+        StepVerifier.create(Mono.delay(Duration.ofMillis(100)).then(cache.retriveMovieInfo("1")).map(MovieInfo::getName))
+                .expectNext("The Dark Knight")
+                .verifyComplete();
+    }
+
+    private MovieInfo movieInfo(String name) {
+        return new MovieInfo("1", name, 2005, List.of("Christian Bale"), null);
+    }
+}
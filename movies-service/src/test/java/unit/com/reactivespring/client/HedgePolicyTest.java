@@ -0,0 +1,161 @@
+package com.reactivespring.client;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgePolicyTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    @Test
+    void slowCallIsHedged() {
+        var hedgePolicy = new HedgePolicy("test-hedged", true, 0.95, Duration.ofMillis(50), new RetryBudget(0.05, 0));
+        warmUp(hedgePolicy);
+
+        var attempts = new AtomicInteger();
+        var firstCancelled = new AtomicBoolean();
+        var call = hedgePolicy.apply(() -> attempts.incrementAndGet() == 1
+                ? Mono.just("first").delayElement(Duration.ofSeconds(5)).doOnCancel(() -> firstCancelled.set(true))
+                : Mono.just("hedge"));
+
+        StepVerifier.create(call)
+                .expectNext("hedge")
+                .verifyComplete();
+
+        assertEquals(2, attempts.get());
+        assertTrue(firstCancelled.get());
+        assertEquals(1.0, count("test-hedged", "hedged"));
+        assertEquals(1.0, count("test-hedged", "won"));
+    }
+
+    @Test
+    void failedHedgeLeavesCallToFirstAttempt() {
+        var hedgePolicy = new HedgePolicy("test-hedge-failed", true, 0.95, Duration.ofMillis(50), new RetryBudget(0.05, 0));
+        warmUp(hedgePolicy);
+
+        var attempts = new AtomicInteger();
+        // e.g. the hedge is turned away by a full bulkhead
+        var call = hedgePolicy.apply(() -> attempts.incrementAndGet() == 1
+                ? Mono.just("first").delayElement(Duration.ofSeconds(1))
+                : Mono.error(new IllegalStateException("bulkhead full")));
+
+        StepVerifier.create(call)
+                .expectNext("first")
+                .verifyComplete();
+
+        assertEquals(2, attempts.get());
+        assertEquals(1.0, count("test-hedge-failed", "hedged"));
+        assertEquals(0.0, count("test-hedge-failed", "won"));
+    }
+
+    @Test
+    void fastCallIsNotHedged() {
+        var hedgePolicy = new HedgePolicy("test-fast", true, 0.95, Duration.ofMillis(200), new RetryBudget(0.05, 0));
+        warmUp(hedgePolicy);
+
+        var attempts = new AtomicInteger();
+        var call = hedgePolicy.apply(() -> {
+            attempts.incrementAndGet();
+            return Mono.just("first").delayElement(Duration.ofMillis(20));
+        });
+
+        StepVerifier.create(call)
+                .expectNext("first")
+                .verifyComplete();
+
+        assertEquals(1, attempts.get());
+        assertEquals(0.0, count("test-fast", "hedged"));
+    }
+
+    @Test
+    void hedgesAreCappedByBudget() {
+        // no share of the calls, only the single hedge the budget starts with
+        var hedgePolicy = new HedgePolicy("test-budget", true, 0.95, Duration.ofMillis(50), new RetryBudget(0, 0));
+        warmUp(hedgePolicy);
+
+        // slow enough for the hedge to be due well before the first attempt answers, even on a cold JVM
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(hedgePolicy.apply(() -> Mono.just("movie").delayElement(Duration.ofSeconds(1))))
+                    .expectNext("movie")
+                    .verifyComplete();
+        }
+
+        assertEquals(1.0, count("test-budget", "hedged"));
+        assertEquals(1.0, count("test-budget", "budget_exhausted"));
+    }
+
+    @Test
+    void notHedgedWhileDisabled() {
+        var hedgePolicy = new HedgePolicy("test-disabled", false, 0.95, Duration.ofMillis(50), new RetryBudget(0.05, 0));
+        warmUp(hedgePolicy);
+
+        var attempts = new AtomicInteger();
+        StepVerifier.create(hedgePolicy.apply(() -> {
+                    attempts.incrementAndGet();
+                    return Mono.just("movie").delayElement(Duration.ofMillis(200));
+                }))
+                .expectNext("movie")
+                .verifyComplete();
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void percentileOfRecentLatencies() {
+        var nanoTime = new AtomicLong();
+        var tracker = new LatencyTracker(100, 0.9, 10, Duration.ofSeconds(1).toNanos(), nanoTime::get);
+
+        for (int i = 1; i <= 9; i++) {
+            tracker.record(i);
+        }
+        assertEquals(-1, tracker.percentileNanos());
+
+        tracker.record(10);
+        assertEquals(9, tracker.percentileNanos());
+
+        // reused until the refresh interval has passed
+        for (int i = 0; i < 100; i++) {
+            tracker.record(1000);
+        }
+        assertEquals(9, tracker.percentileNanos());
+        nanoTime.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertEquals(1000, tracker.percentileNanos());
+    }
+
+    private static void warmUp(HedgePolicy hedgePolicy) {
+        // enough fast calls for the hedge delay to settle on its minimum
+        for (int i = 0; i < 100; i++) {
+            hedgePolicy.apply(() -> Mono.just("movie")).block();
+        }
+    }
+
+    private double count(String client, String outcome) {
+        return meterRegistry.get("movies.client.hedge")
+                .tags("client", client, "outcome", outcome)
+                .counter()
+                .count();
+    }
+}
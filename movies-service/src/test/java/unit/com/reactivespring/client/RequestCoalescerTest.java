@@ -0,0 +1,122 @@
+package com.reactivespring.client;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestCoalescerTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    @Test
+    void concurrentCallsShareOneSubscription() {
+        var coalescer = new RequestCoalescer<String, String>("test-shared");
+        var subscriptions = new AtomicInteger();
+        var call = Mono.delay(Duration.ofMillis(200))
+                .map(tick -> "movie")
+                .doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+
+        var first = coalescer.execute("abc", () -> call);
+        var second = coalescer.execute("abc", () -> call);
+
+        StepVerifier.create(Mono.zip(first, second))
+                .assertNext(tuple -> {
+                    assertEquals("movie", tuple.getT1());
+                    assertEquals("movie", tuple.getT2());
+                })
+                .verifyComplete();
+
+        assertEquals(1, subscriptions.get());
+        assertEquals(0, coalescer.inFlightCount());
+        assertEquals(2.0, meterRegistry.get("movies.client.coalescer.requests").tag("client", "test-shared").counter().count());
+        assertEquals(1.0, meterRegistry.get("movies.client.coalescer.coalesced").tag("client", "test-shared").counter().count());
+    }
+
+    @Test
+    void errorIsSharedAndKeyReleased() {
+        var coalescer = new RequestCoalescer<String, String>("test-error");
+        var subscriptions = new AtomicInteger();
+        Mono<String> call = Mono.delay(Duration.ofMillis(100))
+                .then(Mono.<String>error(new IllegalStateException("downstream failed")))
+                .doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+
+        var first = coalescer.execute("abc", () -> call).onErrorReturn("failed");
+        var second = coalescer.execute("abc", () -> call).onErrorReturn("failed");
+
+        StepVerifier.create(Mono.zip(first, second))
+                .assertNext(tuple -> {
+                    assertEquals("failed", tuple.getT1());
+                    assertEquals("failed", tuple.getT2());
+                })
+                .verifyComplete();
+
+        assertEquals(1, subscriptions.get());
+        assertEquals(0, coalescer.inFlightCount());
+    }
+
+    @Test
+    void sequentialCallsAreNotCoalesced() {
+        var coalescer = new RequestCoalescer<String, String>("test-sequential");
+        var subscriptions = new AtomicInteger();
+        var call = Mono.just("movie").doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+
+        StepVerifier.create(coalescer.execute("abc", () -> call)).expectNext("movie").verifyComplete();
+        StepVerifier.create(coalescer.execute("abc", () -> call)).expectNext("movie").verifyComplete();
+
+        assertEquals(2, subscriptions.get());
+    }
+
+    @Test
+    void callerAfterTheValueStartsANewCall() {
+        var coalescer = new RequestCoalescer<String, String>("test-after-value");
+        var subscriptions = new AtomicInteger();
+        var call = Mono.fromSupplier(() -> "movie-" + subscriptions.incrementAndGet());
+
+        // asks again as soon as the first value arrives, while the first call is still terminating, e.g. a
+        // revalidation right after a load; it must not be handed the value it already has
+        var again = coalescer.execute("abc", () -> call)
+                .flatMap(first -> coalescer.execute("abc", () -> call));
+
+        StepVerifier.create(again).expectNext("movie-2").verifyComplete();
+
+        assertEquals(2, subscriptions.get());
+        assertEquals(0, coalescer.inFlightCount());
+    }
+
+    @Test
+    void callerAfterTheErrorStartsANewCall() {
+        var coalescer = new RequestCoalescer<String, String>("test-after-error");
+        var subscriptions = new AtomicInteger();
+        var call = Mono.defer(() -> subscriptions.incrementAndGet() == 1
+                ? Mono.<String>error(new IllegalStateException("downstream failed"))
+                : Mono.just("movie"));
+
+        // e.g. the next request for the movie, arriving while the failed call is still terminating
+        var again = coalescer.execute("abc", () -> call)
+                .onErrorResume(ex -> coalescer.execute("abc", () -> call));
+
+        StepVerifier.create(again).expectNext("movie").verifyComplete();
+
+        assertEquals(2, subscriptions.get());
+        assertEquals(0, coalescer.inFlightCount());
+    }
+}
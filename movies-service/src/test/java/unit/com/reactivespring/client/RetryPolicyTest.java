@@ -0,0 +1,142 @@
+package com.reactivespring.client;
+
+import com.reactivespring.deadline.Deadline;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    @Test
+    void retriesUntilAttemptsExhausted() {
+        var retryPolicy = retryPolicy("test-attempts", new RetryBudget(0.1, 10));
+        var subscriptions = new AtomicInteger();
+        Mono<String> call = Mono.<String>error(new IllegalStateException("downstream failed"))
+                .doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+
+        StepVerifier.create(retryPolicy.apply(call))
+                .expectErrorMessage("downstream failed")
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(4, subscriptions.get());
+        assertEquals(3.0, count("test-attempts", "retried"));
+        assertEquals(1.0, count("test-attempts", "attempts_exhausted"));
+    }
+
+    @Test
+    void otherFailuresAreNotRetried() {
+        var retryPolicy = retryPolicy("test-not-retryable", new RetryBudget(0.1, 10));
+        var subscriptions = new AtomicInteger();
+        Mono<String> call = Mono.<String>error(new IllegalArgumentException("bad request"))
+                .doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+
+        StepVerifier.create(retryPolicy.apply(call))
+                .expectError(IllegalArgumentException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(1, subscriptions.get());
+    }
+
+    @Test
+    void backoffDoublesUpToMax() {
+        var retryPolicy = retryPolicy("test-backoff", new RetryBudget(0.1, 10));
+
+        assertEquals(Duration.ofMillis(10), retryPolicy.backoff(0));
+        assertEquals(Duration.ofMillis(20), retryPolicy.backoff(1));
+        assertEquals(Duration.ofMillis(40), retryPolicy.backoff(2));
+        assertEquals(Duration.ofMillis(50), retryPolicy.backoff(3));
+        assertEquals(Duration.ofMillis(50), retryPolicy.backoff(100));
+    }
+
+    @Test
+    void noRetryPastDeadline() {
+        var retryPolicy = retryPolicy("test-deadline", new RetryBudget(0.1, 10));
+        var subscriptions = new AtomicInteger();
+        Mono<String> call = Mono.<String>error(new IllegalStateException("downstream failed"))
+                .doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+
+        StepVerifier.create(retryPolicy.apply(call).contextWrite(Deadline.after(Duration.ZERO).toContext()))
+                .expectErrorMessage("downstream failed")
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(1, subscriptions.get());
+        assertEquals(1.0, count("test-deadline", "deadline_exceeded"));
+    }
+
+    @Test
+    void noRetryBeyondBudget() {
+        // no floor, so only the calls themselves earn retries
+        var retryPolicy = retryPolicy("test-budget", new RetryBudget(0.5, 0));
+        var subscriptions = new AtomicInteger();
+        Mono<String> call = Mono.<String>error(new IllegalStateException("downstream failed"))
+                .doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+
+        // the balance is capped at a single retry
+        StepVerifier.create(retryPolicy.apply(call))
+                .expectErrorMessage("downstream failed")
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(2, subscriptions.get());
+        assertEquals(1.0, count("test-budget", "budget_exhausted"));
+    }
+
+    @Test
+    void budgetRefillsWithCallsAndTime() {
+        var nanoTime = new AtomicLong();
+        var budget = new RetryBudget(0.25, 1, nanoTime::get);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(budget.tryWithdraw());
+        }
+        assertFalse(budget.tryWithdraw());
+
+        for (int i = 0; i < 4; i++) {
+            budget.deposit();
+        }
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+
+        nanoTime.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertEquals(2.0, budget.balance(), 0.01);
+
+        // never more than ten seconds of the floor
+        nanoTime.addAndGet(Duration.ofMinutes(1).toNanos());
+        assertEquals(10.0, budget.balance(), 0.01);
+    }
+
+    private static RetryPolicy retryPolicy(String client, RetryBudget budget) {
+        return new RetryPolicy(client, 3, Duration.ofMillis(10), Duration.ofMillis(50), budget,
+                IllegalStateException.class::isInstance);
+    }
+
+    private double count(String client, String outcome) {
+        return meterRegistry.get("movies.client.retry")
+                .tags("client", client, "outcome", outcome)
+                .counter()
+                .count();
+    }
+}
@@ -0,0 +1,183 @@
+package com.reactivespring.config;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.web.reactive.function.client.WebClientAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadBalancingExchangeFilterTest {
+
+    WireMockServer first = new WireMockServer(options().dynamicPort());
+    WireMockServer second = new WireMockServer(options().dynamicPort());
+    WireMockServer third = new WireMockServer(options().dynamicPort());
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        Stream.of(first, second, third).forEach(server -> {
+            server.start();
+            server.stubFor(get(urlPathMatching("/v1/movieInfos/.*"))
+                    .willReturn(aResponse().withBody("{}")));
+        });
+        Metrics.addRegistry(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Stream.of(first, second, third).forEach(WireMockServer::stop);
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    @Test
+    void callsAreSpreadOverInstances() {
+        new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(WebClientAutoConfiguration.class))
+                .withUserConfiguration(WebClientConfiguration.class)
+                .withPropertyValues("restClient.pools.moviesInfo.instances=" + first.baseUrl() + "," + second.baseUrl()
+                        + "," + third.baseUrl())
+                .run(context -> {
+                    var webClient = context.getBean("moviesInfoWebClient", WebClient.class);
+
+                    // the url names the first instance, the filter picks the one it goes to
+                    Flux.range(0, 60)
+                            .flatMap(i -> webClient.get()
+                                    .uri(first.baseUrl() + "/v1/movieInfos/" + i)
+                                    .retrieve()
+                                    .bodyToMono(String.class), 10)
+                            .blockLast(Duration.ofSeconds(10));
+
+                    var counts = Stream.of(first, second, third)
+                            .map(server -> server.countRequestsMatching(getRequestedFor(urlPathMatching("/v1/movieInfos/.*")).build()).getCount())
+                            .collect(Collectors.toList());
+                    assertEquals(60, counts.stream().mapToInt(Integer::intValue).sum());
+                    counts.forEach(count -> assertTrue(count > 0, counts::toString));
+                });
+    }
+
+    @Test
+    void failingInstanceIsEjected() {
+        third.stubFor(get(urlPathMatching("/v1/movieInfos/.*"))
+                .willReturn(aResponse().withStatus(500)));
+        var nanoTime = new AtomicLong();
+        var filter = filter("test-failures", nanoTime);
+
+        call(filter, 60);
+
+        third.verify(3, getRequestedFor(urlPathMatching("/v1/movieInfos/.*")));
+        assertEquals(List.of(uri(first), uri(second)), filter.availableInstances());
+        assertEquals(1.0, ejections("test-failures", "failures"));
+
+        // back in the rotation once the ejection is over
+        nanoTime.addAndGet(Duration.ofSeconds(30).toNanos());
+        assertEquals(List.of(uri(first), uri(second), uri(third)), filter.availableInstances());
+    }
+
+    @Test
+    void slowInstanceIsEjected() {
+        second.stubFor(get(urlEqualTo("/v1/movieInfos/1"))
+                .willReturn(aResponse().withBody("{}").withFixedDelay(1500)));
+        var filter = filter("test-latency", System::nanoTime);
+
+        call(filter, 30);
+
+        second.verify(1, getRequestedFor(urlPathMatching("/v1/movieInfos/.*")));
+        assertEquals(List.of(uri(first), uri(third)), filter.availableInstances());
+        assertEquals(1.0, ejections("test-latency", "latency"));
+    }
+
+    @Test
+    void instanceWhoseCallsAreCancelledIsEjected() {
+        second.stubFor(get(urlEqualTo("/v1/movieInfos/1"))
+                .willReturn(aResponse().withBody("{}").withFixedDelay(1500)));
+        var filter = filter("test-cancelled", System::nanoTime);
+        var webClient = WebClient.builder().filter(filter).build();
+
+        // given up on before the response, like a losing hedge or a call past its deadline
+        for (int i = 0; i < 30; i++) {
+            webClient.get()
+                    .uri(first.baseUrl() + "/v1/movieInfos/1")
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .timeout(Duration.ofMillis(1200))
+                    .onErrorResume(ex -> Mono.empty())
+                    .block();
+        }
+
+        second.verify(1, getRequestedFor(urlPathMatching("/v1/movieInfos/.*")));
+        assertEquals(List.of(uri(first), uri(third)), filter.availableInstances());
+        assertEquals(1.0, ejections("test-cancelled", "latency"));
+    }
+
+    @Test
+    void everyInstanceIsUsedWhileAllAreEjected() {
+        Stream.of(first, second, third).forEach(server -> server.stubFor(get(urlPathMatching("/v1/movieInfos/.*"))
+                .willReturn(aResponse().withStatus(500))));
+        var filter = filter("test-all-ejected", System::nanoTime);
+
+        call(filter, 30);
+
+        assertEquals(List.of(), filter.availableInstances());
+        Stream.of(first, second, third).forEach(server ->
+                assertTrue(server.countRequestsMatching(getRequestedFor(urlPathMatching("/v1/movieInfos/.*")).build()).getCount() >= 3));
+    }
+
+    private LoadBalancingExchangeFilter filter(String client, AtomicLong nanoTime) {
+        return filter(client, nanoTime::get);
+    }
+
+    private LoadBalancingExchangeFilter filter(String client, LongSupplier nanoTime) {
+        var pool = new ConnectionPoolProperties.Pool();
+        pool.setEjectAfterFailures(3);
+        pool.setEjectAboveLatency(Duration.ofSeconds(1));
+        return new LoadBalancingExchangeFilter(client, List.of(uri(first), uri(second), uri(third)), pool, nanoTime);
+    }
+
+    private void call(LoadBalancingExchangeFilter filter, int calls) {
+        var webClient = WebClient.builder().filter(filter).build();
+        for (int i = 0; i < calls; i++) {
+            webClient.get()
+                    .uri(first.baseUrl() + "/v1/movieInfos/1")
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .onErrorResume(ex -> Mono.empty())
+                    .block();
+        }
+    }
+
+    private double ejections(String client, String reason) {
+        return meterRegistry.get("movies.client.lb.ejections")
+                .tags("client", client, "reason", reason)
+                .counter()
+                .count();
+    }
+
+    private static URI uri(WireMockServer server) {
+        return URI.create(server.baseUrl());
+    }
+}
@@ -0,0 +1,117 @@
+package com.reactivespring.config;
+
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.ReviewsServerException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResilienceConfigurationTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withUserConfiguration(ResilienceConfiguration.class)
+            .withPropertyValues("restClient.resilience.reviews.slidingWindowSize=4",
+                    "restClient.resilience.reviews.minimumNumberOfCalls=4",
+                    "restClient.resilience.reviews.waitDurationInOpenState=100ms",
+                    "restClient.resilience.reviews.permittedNumberOfCallsInHalfOpenState=1",
+                    "restClient.resilience.reviews.maxConcurrentCalls=1");
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    @Test
+    void opensOnFailuresAndProbesAfterWait() {
+        contextRunner.run(context -> {
+            var circuitBreaker = context.getBean("reviewsCircuitBreaker", CircuitBreaker.class);
+
+            for (int i = 0; i < 4; i++) {
+                call(circuitBreaker, Mono.error(new ReviewsServerException("error"))).onErrorResume(ex -> Mono.empty()).block();
+            }
+            assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+            StepVerifier.create(call(circuitBreaker, Mono.just("reviews")))
+                    .expectError(CallNotPermittedException.class)
+                    .verify();
+
+            Thread.sleep(150);
+            StepVerifier.create(call(circuitBreaker, Mono.just("reviews")))
+                    .expectNext("reviews")
+                    .verifyComplete();
+            assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+            assertEquals(1, transitions("CLOSED", "OPEN"));
+            assertEquals(1, transitions("OPEN", "HALF_OPEN"));
+            assertEquals(1, transitions("HALF_OPEN", "CLOSED"));
+        });
+    }
+
+    @Test
+    void clientErrorsDontOpen() {
+        contextRunner.run(context -> {
+            var circuitBreaker = context.getBean("reviewsCircuitBreaker", CircuitBreaker.class);
+
+            for (int i = 0; i < 4; i++) {
+                call(circuitBreaker, Mono.error(new MoviesInfoClientException("not found", 404)))
+                        .onErrorResume(ex -> Mono.empty())
+                        .block();
+            }
+            assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        });
+    }
+
+    @Test
+    void bulkheadRejectsAboveMaxConcurrentCalls() {
+        contextRunner.run(context -> {
+            var bulkhead = context.getBean("reviewsBulkhead", Bulkhead.class);
+            var pending = Sinks.<String>one();
+
+            var first = pending.asMono()
+                    .transformDeferred(BulkheadOperator.of(bulkhead))
+                    .subscribe();
+
+            StepVerifier.create(Mono.just("reviews").transformDeferred(BulkheadOperator.of(bulkhead)))
+                    .expectError(BulkheadFullException.class)
+                    .verify(Duration.ofSeconds(1));
+
+            pending.tryEmitValue("reviews");
+            first.dispose();
+            assertEquals(1, bulkhead.getMetrics().getAvailableConcurrentCalls());
+        });
+    }
+
+    private static Mono<String> call(CircuitBreaker circuitBreaker, Mono<String> call) {
+        return call.transformDeferred(CircuitBreakerOperator.of(circuitBreaker));
+    }
+
+    private double transitions(String from, String to) {
+        return meterRegistry.get("movies.client.circuitbreaker.transitions")
+                .tags("client", "reviews", "from", from, "to", to)
+                .counter()
+                .count();
+    }
+}
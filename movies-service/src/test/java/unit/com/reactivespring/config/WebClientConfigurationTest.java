@@ -0,0 +1,275 @@
+package com.reactivespring.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.trace.SpanExporter;
+import com.reactivespring.trace.Trace;
+import com.reactivespring.trace.TraceProperties;
+import com.reactivespring.trace.Tracer;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.web.reactive.function.client.WebClientAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WebClientConfigurationTest {
+
+    WireMockServer wireMockServer = new WireMockServer(options().dynamicPort());
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(WebClientAutoConfiguration.class))
+            .withUserConfiguration(WebClientConfiguration.class);
+
+    @BeforeEach
+    void setUp() {
+        wireMockServer.start();
+        Metrics.addRegistry(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        wireMockServer.stop();
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    @Test
+    void poolsAreConfiguredPerDownstream() {
+        contextRunner
+                .withPropertyValues("restClient.pools.moviesInfo.maxConnections=7",
+                        "restClient.pools.reviews.maxConnections=3")
+                .run(context -> {
+                    assertEquals(7, context.getBean("moviesInfoConnectionProvider", ConnectionProvider.class).maxConnections());
+                    assertEquals(3, context.getBean("reviewsConnectionProvider", ConnectionProvider.class).maxConnections());
+                });
+    }
+
+    @Test
+    void poolMetrics() {
+        wireMockServer.stubFor(get(urlEqualTo("/v1/reviews"))
+                .willReturn(aResponse().withBody("[]")));
+
+        contextRunner.run(context -> {
+            context.getBean("reviewsWebClient", WebClient.class)
+                    .get()
+                    .uri(wireMockServer.baseUrl() + "/v1/reviews")
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .block();
+
+            assertEquals(1, meterRegistry.get("movies.client.pool.acquire")
+                    .tags("client", "reviews", "outcome", "success")
+                    .timer()
+                    .count());
+
+            assertNotNull(meterRegistry.find("reactor.netty.connection.provider.active.connections")
+                    .tag("name", "reviews")
+                    .gauge());
+        });
+    }
+
+    @Test
+    void h2cMultiplexesRequests() {
+        var protocols = ConcurrentHashMap.<String>newKeySet();
+        // streams of one HTTP/2 connection share its client address
+        var clientAddresses = ConcurrentHashMap.<InetSocketAddress>newKeySet();
+
+        var server = HttpServer.create()
+                .port(0)
+                .protocol(HttpProtocol.H2C, HttpProtocol.HTTP11)
+                .handle((request, response) -> {
+                    // set by Netty on requests that arrived as HTTP/2 streams
+                    clientAddresses.add(request.remoteAddress());
+                    protocols.add(request.requestHeaders().contains("x-http2-stream-id") ? "h2c" : request.version().text());
+                    return response.sendString(Mono.just("[]").delayElement(Duration.ofMillis(100)));
+                })
+                .bindNow();
+
+        try {
+            contextRunner.run(context -> {
+                var webClient = context.getBean("moviesInfoWebClient", WebClient.class);
+                Function<Integer, Mono<String>> call = i -> webClient.get()
+                        .uri("http://localhost:" + server.port() + "/v1/movieInfos/" + i)
+                        .retrieve()
+                        .bodyToMono(String.class);
+
+                Flux.range(0, 20)
+                        .flatMap(call)
+                        .blockLast(Duration.ofSeconds(10));
+
+                assertEquals(Set.of("h2c"), protocols);
+                // 20 concurrent requests as streams on at most http2MaxConnections connections
+                assertTrue(clientAddresses.size() <= 2);
+            });
+        } finally {
+            server.disposeNow();
+        }
+    }
+
+    @Test
+    void smileIsPreferred() throws Exception {
+        var accepted = new ConcurrentLinkedQueue<String>();
+        var smile = new ObjectMapper(new SmileFactory()).writeValueAsBytes(Map.of("movieInfoId", "1", "name", "Batman Begins"));
+
+        var server = HttpServer.create()
+                .port(0)
+                .handle((request, response) -> {
+                    accepted.add(request.requestHeaders().get("Accept"));
+                    return response.header("Content-Type", "application/x-jackson-smile")
+                            .sendByteArray(Mono.just(smile));
+                })
+                .bindNow();
+
+        try {
+            contextRunner.run(context -> {
+                var movieInfo = context.getBean("moviesInfoWebClient", WebClient.class)
+                        .get()
+                        .uri("http://localhost:" + server.port() + "/v1/movieInfos/1")
+                        .retrieve()
+                        .bodyToMono(MovieInfo.class)
+                        .block();
+
+                assertEquals("Batman Begins", movieInfo.getName());
+            });
+
+            contextRunner.withPropertyValues("restClient.pools.reviews.smile=false").run(context ->
+                    context.getBean("reviewsWebClient", WebClient.class)
+                            .get()
+                            .uri("http://localhost:" + server.port() + "/v1/reviews?movieInfoId=1")
+                            .accept(MediaType.APPLICATION_NDJSON)
+                            .retrieve()
+                            .toBodilessEntity()
+                            .block());
+
+            assertEquals(List.of("application/x-jackson-smile, application/json", "application/x-ndjson"),
+                    new ArrayList<>(accepted));
+        } finally {
+            server.disposeNow();
+        }
+    }
+
+    @Test
+    void traceIsPropagated() {
+        var traceparents = new ConcurrentLinkedQueue<String>();
+
+        var server = HttpServer.create()
+                .port(0)
+                .handle((request, response) -> {
+                    traceparents.add(String.valueOf(request.requestHeaders().get(Trace.TRACEPARENT_HEADER)));
+                    return response.sendString(Mono.just("[]"));
+                })
+                .bindNow();
+
+        try {
+            contextRunner.run(context -> {
+                var properties = new TraceProperties();
+                properties.setEnabled(true);
+                var tracer = new Tracer(properties, context.getBeanProvider(SpanExporter.class));
+                var trace = tracer.join("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01");
+
+                Supplier<Mono<String>> call = () -> context.getBean("reviewsWebClient", WebClient.class)
+                        .get()
+                        .uri("http://localhost:" + server.port() + "/v1/reviews?movieInfoId=1")
+                        .retrieve()
+                        .bodyToMono(String.class);
+
+                call.get()
+                        .transform(tracer.mono("reviews.attempt"))
+                        .contextWrite(trace.toContext())
+                        .block();
+                // not sampled
+                call.get()
+                        .transform(tracer.mono("reviews.attempt"))
+                        .contextWrite(tracer.join("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-00").toContext())
+                        .block();
+                // not made for a request
+                call.get().block();
+            });
+
+            var sent = new ArrayList<>(traceparents);
+            assertEquals(3, sent.size());
+            // the span of the attempt, as the parent of the downstream request
+            assertTrue(sent.get(0).matches("00-0af7651916cd43dd8448eb211c80319c-[0-9a-f]{16}-01"), sent.get(0));
+            // no span recorded, so the caller's is sent on, unsampled
+            assertEquals("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-00", sent.get(1));
+            assertEquals("null", sent.get(2));
+        } finally {
+            server.disposeNow();
+        }
+    }
+
+    @Test
+    void compressedResponsesAreInflated() {
+        var acceptedEncodings = new ConcurrentLinkedQueue<String>();
+        var body = "[" + String.join(",", Collections.nCopies(200, "{\"name\":\"Batman Begins\"}")) + "]";
+
+        var server = HttpServer.create()
+                .port(0)
+                .compress(true)
+                .handle((request, response) -> {
+                    acceptedEncodings.add(String.valueOf(request.requestHeaders().get("Accept-Encoding")));
+                    return response.header("Content-Type", "application/json")
+                            .sendString(Mono.just(body));
+                })
+                .bindNow();
+
+        try {
+            contextRunner.run(context -> {
+                var movieInfos = context.getBean("moviesInfoWebClient", WebClient.class)
+                        .get()
+                        .uri("http://localhost:" + server.port() + "/v1/movieInfos")
+                        .retrieve()
+                        .bodyToFlux(MovieInfo.class)
+                        .collectList()
+                        .block();
+
+                assertEquals(200, movieInfos.size());
+            });
+
+            contextRunner.withPropertyValues("restClient.pools.reviews.compress=false").run(context ->
+                    context.getBean("reviewsWebClient", WebClient.class)
+                            .get()
+                            .uri("http://localhost:" + server.port() + "/v1/reviews?movieInfoId=1")
+                            .retrieve()
+                            .toBodilessEntity()
+                            .block());
+
+            assertEquals(List.of("gzip", "null"), new ArrayList<>(acceptedEncodings));
+        } finally {
+            server.disposeNow();
+        }
+    }
+}
@@ -1,30 +1,55 @@
 package com.reactivespring.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.cache.ReviewsCache;
+import com.reactivespring.client.MovieInfoRestClient;
 import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieBatchResult;
+import com.reactivespring.domain.MovieSummary;
+import com.reactivespring.domain.Review;
+import com.reactivespring.deadline.Deadline;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
 @AutoConfigureWebTestClient
 @AutoConfigureWireMock(port = 8084)
+@AutoConfigureMetrics
 @TestPropertySource(
         properties = {
                 "restClient.moviesInfo=http://localhost:8084/v1/movieInfos",
-                "restClient.reviews=http://localhost:8084/v1/reviews"
+                "restClient.reviews=http://localhost:8084/v1/reviews",
+                "wiremock.reset-mappings-after-each-test=true",
+                "movies.cache.invalidation.enabled=false",
+                "movies.batch.maxIds=5"
         }
 )
 public class MoviesControllerUnitTest {
@@ -32,6 +57,25 @@ public class MoviesControllerUnitTest {
     @Autowired
     WebTestClient webClient;
 
+    @Autowired
+    MovieInfoCache movieInfoCache;
+
+    @Autowired
+    MovieInfoRestClient movieInfoRestClient;
+
+    @Autowired
+    ReviewsCache reviewsCache;
+
+    @Autowired
+    CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @AfterEach
+    void tearDown() {
+        movieInfoCache.invalidateAll();
+        reviewsCache.invalidateAll();
+        circuitBreakerRegistry.getAllCircuitBreakers().forEach(CircuitBreaker::reset);
+    }
+
     @Test
     void movieIdTest() {
         var movieId = "abc";
@@ -39,7 +83,7 @@ public class MoviesControllerUnitTest {
         stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
                 .willReturn(aResponse()
                         .withHeader("Content-type", "application/json")
-                        .withBodyFile("movieInfo.json")));
+                        .withBodyFile("movieinfo.json")));
 
         stubFor(get(urlPathEqualTo("/v1/reviews"))
                 .willReturn(aResponse()
@@ -59,6 +103,429 @@ public class MoviesControllerUnitTest {
 
     }
 
+    @Test
+    void movieIdTest_metrics() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        webClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk();
+
+        // with every histogram bucket the scrape is larger than the default buffer
+        var scrape = webClient.mutate()
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(4 * 1024 * 1024))
+                .build()
+                .get()
+                .uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        // latency buckets per route and per downstream call, not per movie id
+        assertTrue(scrape.lines().anyMatch(line -> line.startsWith("http_server_requests_seconds_bucket{")
+                && line.contains("uri=\"/v1/movies/{id}\"")), scrape);
+        assertTrue(scrape.lines().anyMatch(line -> line.startsWith("http_client_requests_seconds_bucket{")
+                && line.contains("uri=\"/v1/movieInfos/{id}\"") && line.contains("outcome=\"SUCCESS\"")), scrape);
+        assertTrue(scrape.lines().anyMatch(line -> line.startsWith("http_client_requests_seconds_bucket{")
+                && line.contains("uri=\"/v1/reviews?movieInfoId={movieInfoId}\"") && line.contains("status=\"200\"")), scrape);
+    }
+
+    @Test
+    void movieIdTest_revalidated() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .withHeader("If-None-Match", absent())
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withHeader("ETag", "\"3\"")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .withHeader("If-None-Match", equalTo("\"3\""))
+                .willReturn(aResponse().withStatus(304)));
+
+        // kept as sent, servers that compress may have suffixed it
+        var movieInfo = movieInfoRestClient.retriveMovieInfo(movieId).block();
+        assertTrue(movieInfo.getEtag().startsWith("\"3"));
+
+        // unchanged, so the cached movie info is kept
+        assertSame(movieInfo, movieInfoRestClient.revalidateMovieInfo(movieId, movieInfo).block());
+        verify(1, getRequestedFor(urlEqualTo("/v1/movieInfos/"+movieId)).withHeader("If-None-Match", equalTo("\"3\"")));
+
+        // the validator stays between movies-service and movies-info-service
+        webClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.movieInfo.etag").doesNotExist();
+    }
+
+    @Test
+    void movieIdTest_streamReviews() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withHeader("Accept", containing("application/x-ndjson"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/x-ndjson")
+                        .withBodyFile("reviews.ndjson")));
+
+        webClient.get()
+                .uri("/v1/movies/{id}?streamReviews=true", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertEquals(2, Objects.requireNonNull(movie).getReviewList().size());
+                    assertEquals("Excellent Movie", movie.getReviewList().get(1).getComment());
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                });
+    }
+
+    @Test
+    void movieIdTest_streamReviews_slowBody() {
+        // an id of its own, calls left over from other tests are told apart by it
+        var movieId = "slow-body";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        // the reviews take longer to arrive than a slow call
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/x-ndjson")
+                        .withBodyFile("reviews.ndjson")
+                        .withChunkedDribbleDelay(2, 2500)));
+
+        webClient.get()
+                .uri("/v1/movies/{id}?streamReviews=true", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult ->
+                        assertEquals(2, Objects.requireNonNull(movieEntityExchangeResult.getResponseBody()).getReviewList().size()));
+
+        // the breaker only saw the call up to the response headers
+        assertEquals(0, circuitBreakerRegistry.circuitBreaker("reviews").getMetrics().getNumberOfSlowCalls());
+
+        // streamed under the budget of its own route, not the 5s default
+        var requests = WireMock.findAll(getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId)));
+        assertTrue(Long.parseLong(requests.get(0).getHeader(Deadline.TIMEOUT_HEADER)) > 5000);
+    }
+
+    @Test
+    void movieIdTest_streamReviews_smile() throws Exception {
+        var movieId = "abc";
+        var smileMapper = new ObjectMapper(new SmileFactory());
+        // one Smile value after the other, as the reviews service streams them
+        var reviews = new ByteArrayOutputStream();
+        reviews.write(smileMapper.writeValueAsBytes(new Review("1", 1L, "Awesome Movie", 9.0)));
+        reviews.write(smileMapper.writeValueAsBytes(new Review("2", 1L, "Excellent Movie", 8.0)));
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withHeader("Accept", containing("application/stream+x-jackson-smile"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/stream+x-jackson-smile")
+                        .withBody(reviews.toByteArray())));
+
+        webClient.get()
+                .uri("/v1/movies/{id}?streamReviews=true", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertEquals(2, Objects.requireNonNull(movie).getReviewList().size());
+                    assertEquals("Excellent Movie", movie.getReviewList().get(1).getComment());
+                });
+    }
+
+    @Test
+    void movieIdTest_streamReviews_noReviews() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withStatus(404)));
+
+        webClient.get()
+                .uri("/v1/movies/{id}?streamReviews=true", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertTrue(Objects.requireNonNull(movie).getReviewList().isEmpty());
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                });
+    }
+
+    @Test
+    void movieIdTest_streamReviews_reviews500() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withStatus(500)
+                        .withBody("Review service error")));
+
+        // nothing has been written when the reviews call fails, so the client still gets an error status
+        webClient.get()
+                .uri("/v1/movies/{id}?streamReviews=true", movieId)
+                .exchange()
+                .expectStatus().is5xxServerError()
+                .expectBody(String.class)
+                .isEqualTo("Review service error");
+
+        WireMock.verify(4, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void movieSummaryTest() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews/summary"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("review-summary.json")));
+
+        webClient.get()
+                .uri("/v1/movies/{id}/summary", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(MovieSummary.class)
+                .consumeWith(movieSummaryEntityExchangeResult -> {
+                    var movieSummary = movieSummaryEntityExchangeResult.getResponseBody();
+                    assertEquals("Batman Begins", Objects.requireNonNull(movieSummary).getMovieInfo().getName());
+                    assertEquals(2, movieSummary.getReviewSummary().getCount());
+                    assertEquals(8.5, movieSummary.getReviewSummary().getAverageRating());
+                });
+
+        // the summary view never loads the reviews themselves
+        WireMock.verify(0, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void movieSummaryTest_reviewsCircuitOpen() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        circuitBreakerRegistry.circuitBreaker("reviews").transitionToOpenState();
+
+        webClient.get()
+                .uri("/v1/movies/{id}/summary", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(MovieSummary.class)
+                .consumeWith(movieSummaryEntityExchangeResult -> {
+                    var movieSummary = movieSummaryEntityExchangeResult.getResponseBody();
+                    assertEquals("Batman Begins", Objects.requireNonNull(movieSummary).getMovieInfo().getName());
+                    assertEquals(0, movieSummary.getReviewSummary().getCount());
+                    assertNull(movieSummary.getReviewSummary().getAverageRating());
+                });
+
+        WireMock.verify(0, getRequestedFor(urlPathEqualTo("/v1/reviews/summary")));
+    }
+
+    @Test
+    void movieSummaryTest_deadlinePropagated() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews/summary"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("review-summary.json")));
+
+        webClient.get()
+                .uri("/v1/movies/{id}/summary", movieId)
+                .header(Deadline.TIMEOUT_HEADER, "2000")
+                .exchange()
+                .expectStatus().isOk();
+
+        // the time left when the call was made, never more than the caller allowed
+        var requests = WireMock.findAll(getRequestedFor(urlPathEqualTo("/v1/reviews/summary")));
+        assertEquals(1, requests.size());
+        var timeout = Long.parseLong(requests.get(0).getHeader(Deadline.TIMEOUT_HEADER));
+        assertTrue(timeout > 0 && timeout <= 2000);
+    }
+
+    @Test
+    void movieSummaryTest_deadlineExceeded() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews/summary"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("review-summary.json")
+                        .withFixedDelay(2000)));
+
+        webClient.get()
+                .uri("/v1/movies/{id}/summary", movieId)
+                .header(Deadline.TIMEOUT_HEADER, "300")
+                .exchange()
+                .expectStatus().isEqualTo(504);
+    }
+
+    @Test
+    void movieIdTest_deadlineExceeded() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(2000)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        webClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .header(Deadline.TIMEOUT_HEADER, "300")
+                .exchange()
+                .expectStatus().isEqualTo(504);
+    }
+
+    @Test
+    void movieIdTest_cacheLoadsSendDeadline() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        webClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk();
+
+        // the loads are shared by the requests waiting for them and carry the cache's own deadline
+        var requests = new ArrayList<>(WireMock.findAll(getRequestedFor(urlEqualTo("/v1/movieInfos/"+movieId))));
+        requests.addAll(WireMock.findAll(getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))));
+        assertEquals(2, requests.size());
+        requests.forEach(request -> {
+            var timeout = Long.parseLong(request.getHeader(Deadline.TIMEOUT_HEADER));
+            assertTrue(timeout > 0 && timeout <= 5000);
+        });
+    }
+
+    @Test
+    void movieIdTest_deadlineAlreadyPassed() {
+        var movieId = "abc";
+
+        webClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .header(Deadline.TIMEOUT_HEADER, "0")
+                .exchange()
+                .expectStatus().isEqualTo(504);
+
+        WireMock.verify(0, getRequestedFor(urlEqualTo("/v1/movieInfos/"+movieId)));
+    }
+
+    @Test
+    void movieIdTest_parallel() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(1000)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(1000)));
+
+        webClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assert Objects.requireNonNull(movie).getReviewList().size() ==2;
+                });
+
+        // the reviews call must not wait for the movie info response, so both requests reach the stub together
+        var movieInfoRequest = findAll(getRequestedFor(urlEqualTo("/v1/movieInfos/"+movieId))).get(0);
+        var reviewsRequest = findAll(getRequestedFor(urlPathEqualTo("/v1/reviews"))).get(0);
+        var gap = Math.abs(movieInfoRequest.getLoggedDate().getTime() - reviewsRequest.getLoggedDate().getTime());
+        assertTrue(gap < 1000);
+    }
+
     @Test
     void movieIdTest_404() {
         var movieId = "abc";
@@ -86,6 +553,54 @@ public class MoviesControllerUnitTest {
 
     }
 
+    @Test
+    void movieIdTest_cached() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        for (int i = 0; i < 2; i++) {
+            webClient.get()
+                    .uri("/v1/movies/{id}", movieId)
+                    .exchange()
+                    .expectStatus().isOk();
+        }
+
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/movieInfos/"+movieId)));
+    }
+
+    @Test
+    void movieIdTest_404_cached() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withStatus(404)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        for (int i = 0; i < 2; i++) {
+            webClient.get()
+                    .uri("/v1/movies/{id}", movieId)
+                    .exchange()
+                    .expectStatus().isNotFound();
+        }
+
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/movieInfos/"+movieId)));
+    }
+
     @Test
     void movieIdTest_500() {
         var movieId = "abc";
@@ -127,4 +642,170 @@ public class MoviesControllerUnitTest {
 
         WireMock.verify(4, getRequestedFor(urlEqualTo("/v1/movieInfos/"+movieId)));
     }
+
+    @Test
+    void movieIdTest_reviews500_retry() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withStatus(500)
+                        .withBody("Review service error")));
+
+        webClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().is5xxServerError()
+                .expectBody(String.class)
+                .isEqualTo("Review service error");
+
+        WireMock.verify(4, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void movieBatchTest() {
+
+        stubFor(post(urlEqualTo("/v1/movieInfos/batch"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfos.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoIds", equalTo("1,2"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("reviews-by-movie.json")));
+
+        webClient.get()
+                .uri("/v1/movies?ids={ids}", "1,2")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MovieBatchResult.class)
+                .hasSize(2)
+                .consumeWith(response -> {
+                    var results = Objects.requireNonNull(response.getResponseBody()).stream()
+                            .collect(Collectors.toMap(MovieBatchResult::getMovieId, Function.identity()));
+
+                    assertEquals(200, results.get("1").getStatus());
+                    assertEquals("Batman Begins", results.get("1").getMovie().getMovieInfo().getName());
+                    assertEquals(2, results.get("1").getMovie().getReviewList().size());
+                    assertEquals(404, results.get("2").getStatus());
+                    assertNull(results.get("2").getMovie());
+                });
+
+        // two round trips for the whole batch instead of two per movie
+        WireMock.verify(1, postRequestedFor(urlEqualTo("/v1/movieInfos/batch")));
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void movieBatchTest_500() {
+
+        stubFor(post(urlEqualTo("/v1/movieInfos/batch"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withStatus(500)
+                        .withBody("MovieInfo service error")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("reviews-by-movie.json")));
+
+        webClient.get()
+                .uri("/v1/movies?ids={ids}", "1,2")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MovieBatchResult.class)
+                .hasSize(2)
+                .consumeWith(response -> Objects.requireNonNull(response.getResponseBody())
+                        .forEach(result -> {
+                            assertEquals(503, result.getStatus());
+                            assertEquals("MovieInfo service error", result.getErrorMessage());
+                        }));
+    }
+
+    @Test
+    void movieBatchTest_tooManyIds() {
+
+        webClient.get()
+                .uri("/v1/movies?ids={ids}", "1,2,3,4,5,6")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("At most 5 movieIds can be requested at once, got 6");
+
+        WireMock.verify(0, postRequestedFor(urlEqualTo("/v1/movieInfos/batch")));
+        WireMock.verify(0, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void movieIdTest_reviewsCircuitOpen() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        circuitBreakerRegistry.circuitBreaker("reviews").transitionToOpenState();
+
+        webClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertEquals("Batman Begins", Objects.requireNonNull(movie).getMovieInfo().getName());
+                    assertTrue(movie.getReviewList().isEmpty());
+                });
+
+        WireMock.verify(0, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void movieIdTest_moviesInfoCircuitOpen() {
+        var movieId = "abc";
+
+        circuitBreakerRegistry.circuitBreaker("moviesInfo").transitionToOpenState();
+
+        webClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isEqualTo(503);
+
+        // neither the call nor its retries reach the service
+        WireMock.verify(0, getRequestedFor(urlEqualTo("/v1/movieInfos/"+movieId)));
+    }
+
+    @Test
+    void movieIdTest_500_opensCircuit() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieInfos/"+movieId))
+                .willReturn(aResponse()
+                        .withStatus(500)
+                        .withBody("MovieInfo service error")));
+
+        // up to 4 attempts per request, the breaker opens once the minimum number of 10 calls failed
+        for (int i = 0; i < 5; i++) {
+            webClient.get()
+                    .uri("/v1/movies/{id}", movieId)
+                    .exchange()
+                    .expectStatus().is5xxServerError();
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreakerRegistry.circuitBreaker("moviesInfo").getState());
+        // after that neither new requests nor their retries reach the service
+        WireMock.verify(10, getRequestedFor(urlEqualTo("/v1/movieInfos/"+movieId)));
+    }
 }